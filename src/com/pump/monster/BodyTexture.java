@@ -1,6 +1,8 @@
 package com.pump.monster;
 
 import com.pump.data.converter.ConverterUtils;
+import com.pump.graphics.vector.Operation;
+import com.pump.graphics.vector.VectorImage;
 import com.pump.image.pixel.Scaling;
 
 import javax.imageio.ImageIO;
@@ -11,12 +13,15 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 
 // TODO: it'd be great if we could replace these with vector textures. That would
 // reduce both the size of the jar used to render everything *and* the output vector graphics.
 public class BodyTexture {
 
-    private static final Map<String, BodyTexture> namedTextures = new TreeMap<>();
+    private static final Map<String, BodyTexture> namedTextures = new ConcurrentSkipListMap<>();
 
     public static final BodyTexture NONE = new BodyTexture(new BufferedImage(1,1,BufferedImage.TYPE_INT_ARGB), 1, "NONE") {
         @Override
@@ -87,8 +92,81 @@ public class BodyTexture {
         return Collections.unmodifiableMap(namedTextures);
     }
 
+    /**
+     * Return true if an Operation was created by {@link #paint(Graphics2D, Shape, int, int)}.
+     */
+    public static boolean isTexture(Operation operation) {
+        return operation.getContext().getPaint() instanceof MipMapTexturePaint;
+    }
+
+    /**
+     * Return a copy of an image without any of the operations {@link #isTexture(Operation)} identifies.
+     * The remaining Operations are shared with the original image.
+     * <p>
+     * This is useful for formats (like SVG) that don't support textures. Note a textured monster
+     * uses a slightly more saturated body color than the same monster without a texture, and this
+     * preserves that color.
+     */
+    public static VectorImage removeTextures(VectorImage image) {
+        VectorImage returnValue = new VectorImage();
+        for (Operation operation : image.getOperations()) {
+            if (!isTexture(operation))
+                returnValue.getOperations().add(operation);
+        }
+        return returnValue;
+    }
+
+    /**
+     * Decode every named texture now (in parallel) instead of waiting until each is first painted.
+     * <p>
+     * By default textures are loaded lazily, which is appropriate for command-line tools that
+     * only render a few monsters. Long-running applications should call this once at startup
+     * so the first monsters they render don't pay for decoding.
+     *
+     * @return the time (in milliseconds) this method took.
+     */
+    public static long warmUp() throws IOException {
+        long t = System.currentTimeMillis();
+        List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+        namedTextures.values().parallelStream().forEach(texture -> {
+            try {
+                texture.getMipMapPaints();
+            } catch (IOException e) {
+                errors.add(e);
+            }
+        });
+        if (!errors.isEmpty()) {
+            IOException e = errors.get(0);
+            for (int a = 1; a < errors.size(); a++) {
+                e.addSuppressed(errors.get(a));
+            }
+            throw e;
+        }
+        return System.currentTimeMillis() - t;
+    }
+
+    /**
+     * Return how long it took to load each named texture (in milliseconds). Textures that
+     * haven't been loaded yet are omitted.
+     */
+    public static Map<String, Long> getLoadTimes() {
+        Map<String, Long> returnValue = new TreeMap<>();
+        for (Map.Entry<String, BodyTexture> entry : namedTextures.entrySet()) {
+            long nanos = entry.getValue().loadTimeNanos;
+            if (nanos >= 0)
+                returnValue.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        return returnValue;
+    }
+
+    /**
+     * Mip levels are generated until the texture is smaller than this many pixels on a side.
+     */
+    private static final int MIN_MIP_SIZE = 16;
+
     URL url;
-    TexturePaint texturePaint;
+    volatile TexturePaint[] mipMapPaints;
+    volatile long loadTimeNanos = -1;
     double resolution;
     String name;
     BufferedImage image;
@@ -156,27 +234,117 @@ public class BodyTexture {
             throw new IllegalArgumentException("cannot combine two different Composite types: " + ConverterUtils.toString(c) + " vs " + ConverterUtils.toString(myComposite));
         }
 
-        TexturePaint p = null;
+        TexturePaint[] levels;
         try {
-            p = getPaint();
+            levels = getMipMapPaints();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        // translate our rect. The texture should be a seamless tile, so where it starts shouldn't matter:
-        Rectangle2D translatedRect = p.getAnchorRect();
-        translatedRect.setRect(dx, dy, translatedRect.getWidth(), translatedRect.getHeight());
-        p = new TexturePaint(p.getImage(), translatedRect);
-
-        g.setPaint(p);
+        // translate our tile. The texture should be a seamless tile, so where it starts shouldn't matter:
+        g.setPaint(new MipMapTexturePaint(levels, dx, dy));
         g.fill(shape);
     }
 
     public TexturePaint getPaint() throws IOException {
-        if (texturePaint == null) {
-            texturePaint = createPaint();
+        return getMipMapPaints()[0];
+    }
+
+    /**
+     * Return TexturePaints for this texture at successively lower resolutions. The first element
+     * is {@link #getPaint()}, and all elements share the same anchor rectangle.
+     * <p>
+     * This is thread-safe: the first caller decodes the texture while other callers wait for it.
+     */
+    public TexturePaint[] getMipMapPaints() throws IOException {
+        TexturePaint[] returnValue = mipMapPaints;
+        if (returnValue != null)
+            return returnValue;
+
+        synchronized (this) {
+            if (mipMapPaints == null) {
+                long t = System.nanoTime();
+                TexturePaint p = createPaint();
+                Rectangle2D anchor = p.getAnchorRect();
+                List<TexturePaint> levels = new ArrayList<>();
+                levels.add(p);
+                BufferedImage level = p.getImage();
+                while (level.getWidth() / 2 >= MIN_MIP_SIZE && level.getHeight() / 2 >= MIN_MIP_SIZE) {
+                    level = createHalfSizeTile(level);
+                    levels.add(new TexturePaint(level, anchor));
+                }
+                mipMapPaints = levels.toArray(new TexturePaint[0]);
+                loadTimeNanos = System.nanoTime() - t;
+            }
+            return mipMapPaints;
+        }
+    }
+
+    /**
+     * Return true if this texture has already been decoded.
+     */
+    public boolean isLoaded() {
+        return mipMapPaints != null;
+    }
+
+    /**
+     * Return the time it took to decode this texture and create its mip levels, or -1 if it hasn't been loaded yet.
+     */
+    public long getLoadTime(TimeUnit unit) {
+        long nanos = loadTimeNanos;
+        return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Average each 2x2 block of pixels. This wraps around the edges of the image, so the
+     * result is still a seamless tile. Grayscale images stay grayscale (one byte per pixel).
+     * <p>
+     * If the width or height is odd we round the size up, so the last column (or row) is averaged
+     * with the first one instead of being dropped.
+     */
+    private static BufferedImage createHalfSizeTile(BufferedImage src) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        int width = (srcWidth + 1) / 2;
+        int height = (srcHeight + 1) / 2;
+
+        if (src.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            int[] row1 = new int[srcWidth];
+            int[] row2 = new int[srcWidth];
+            int[] dstRow = new int[width];
+            for (int y = 0; y < height; y++) {
+                src.getRaster().getSamples(0, 2 * y, srcWidth, 1, 0, row1);
+                src.getRaster().getSamples(0, (2 * y + 1) % srcHeight, srcWidth, 1, 0, row2);
+                for (int x = 0; x < width; x++) {
+                    int x2 = (2 * x + 1) % srcWidth;
+                    dstRow[x] = (row1[2 * x] + row1[x2] + row2[2 * x] + row2[x2] + 2) / 4;
+                }
+                dst.getRaster().setSamples(0, y, width, 1, 0, dstRow);
+            }
+            return dst;
+        }
+
+        BufferedImage dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] row1 = new int[srcWidth];
+        int[] row2 = new int[srcWidth];
+        int[] dstRow = new int[width];
+        for (int y = 0; y < height; y++) {
+            src.getRGB(0, 2 * y, srcWidth, 1, row1, 0, srcWidth);
+            src.getRGB(0, (2 * y + 1) % srcHeight, srcWidth, 1, row2, 0, srcWidth);
+            for (int x = 0; x < width; x++) {
+                int x2 = (2 * x + 1) % srcWidth;
+                int argb = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = ((row1[2 * x] >>> shift) & 0xff) + ((row1[x2] >>> shift) & 0xff) +
+                            ((row2[2 * x] >>> shift) & 0xff) + ((row2[x2] >>> shift) & 0xff);
+                    argb |= ((sum + 2) / 4) << shift;
+                }
+                dstRow[x] = argb;
+            }
+            dst.setRGB(0, y, width, 1, dstRow, 0, width);
         }
-        return texturePaint;
+        return dst;
     }
 
     protected TexturePaint createPaint() throws IOException {
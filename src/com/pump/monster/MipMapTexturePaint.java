@@ -0,0 +1,70 @@
+package com.pump.monster;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.ColorModel;
+import java.util.Objects;
+
+/**
+ * This is a tiled texture that chooses between several precomputed resolutions of the same image
+ * when it is rasterized.
+ * <p>
+ * A {@link TexturePaint} always samples its full-size image, so when a large texture is painted
+ * into a small thumbnail Java2D resamples thousands of texels per pixel. This paint waits until
+ * {@link #createContext(ColorModel, Rectangle, Rectangle2D, AffineTransform, RenderingHints)} is
+ * called (when the actual device transform is known) and then delegates to the smallest level
+ * that still offers at least one texel per device pixel.
+ * <p>
+ * This is important for VectorImages: they record the paint once and may replay it at any scale.
+ */
+public class MipMapTexturePaint implements Paint {
+
+    private final TexturePaint[] levels;
+    private final double dx, dy;
+
+    /**
+     * @param levels the same texture at successively lower resolutions. Each TexturePaint must use
+     *               the same anchor rectangle, and the first element must have the highest resolution.
+     * @param dx the horizontal offset of the tile.
+     * @param dy the vertical offset of the tile.
+     */
+    public MipMapTexturePaint(TexturePaint[] levels, double dx, double dy) {
+        if (levels.length == 0)
+            throw new IllegalArgumentException("at least one level is required");
+        this.levels = Objects.requireNonNull(levels);
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * Return the level that should be used when one unit in user space covers the given number of device pixels.
+     */
+    public TexturePaint getLevel(double deviceScale) {
+        Rectangle2D anchor = levels[0].getAnchorRect();
+        for (int a = levels.length - 1; a > 0; a--) {
+            double texelsPerUnit = levels[a].getImage().getWidth() / anchor.getWidth();
+            if (texelsPerUnit >= deviceScale)
+                return levels[a];
+        }
+        return levels[0];
+    }
+
+    @Override
+    public PaintContext createContext(ColorModel cm, Rectangle deviceBounds, Rectangle2D userBounds,
+                                      AffineTransform xform, RenderingHints hints) {
+        double deviceScale = Math.sqrt(Math.abs(xform.getDeterminant()));
+        AffineTransform tx = new AffineTransform(xform);
+        tx.translate(dx, dy);
+        return getLevel(deviceScale).createContext(cm, deviceBounds, userBounds, tx, hints);
+    }
+
+    @Override
+    public int getTransparency() {
+        int returnValue = Transparency.OPAQUE;
+        for (TexturePaint level : levels) {
+            returnValue = Math.max(returnValue, level.getTransparency());
+        }
+        return returnValue;
+    }
+}
@@ -1,7 +1,7 @@
 package com.pump.monster;
 
 import java.awt.*;
-import java.util.Arrays;
+import java.util.Objects;
 import java.util.Random;
 
 public class Monster {
@@ -24,7 +24,77 @@ public class Monster {
     public final boolean includeTexture;
     public final Legs legs;
 
-    private int hashcode;
+    /**
+     * The number of bits {@link #toKey()} uses for each enum attribute, in the order they are packed.
+     */
+    private static final int BODY_SHAPE_BITS = bitsFor(BodyShape.values());
+    private static final int HAIR_BITS = bitsFor(Hair.values());
+    private static final int TEXTURE_BITS = 1;
+    private static final int EYE_NUMBER_BITS = bitsFor(EyeNumber.values());
+    private static final int EYE_PLACEMENT_BITS = bitsFor(EyePlacement.values());
+    private static final int EYELID_BITS = bitsFor(Eyelid.values());
+    private static final int MOUTH_SHAPE_BITS = bitsFor(MouthShape.values());
+    private static final int MOUTH_FILL_BITS = bitsFor(MouthFill.values());
+    private static final int HORN_BITS = bitsFor(Horn.values());
+    private static final int LEGS_BITS = bitsFor(Legs.values());
+
+    static {
+        int enumBits = BODY_SHAPE_BITS + HAIR_BITS + TEXTURE_BITS + EYE_NUMBER_BITS + EYE_PLACEMENT_BITS +
+                EYELID_BITS + MOUTH_SHAPE_BITS + MOUTH_FILL_BITS + HORN_BITS + LEGS_BITS;
+        // the lower 32 bits are reserved for the ARGB color
+        if (enumBits > 32)
+            throw new IllegalStateException("The Monster attributes require " + (32 + enumBits) + " bits, which doesn't fit in a long.");
+    }
+
+    private static int bitsFor(Object[] enumValues) {
+        return 32 - Integer.numberOfLeadingZeros(enumValues.length - 1);
+    }
+
+    /**
+     * Recreate a Monster from a value returned by {@link #toKey()}.
+     *
+     * @throws IllegalArgumentException if the key doesn't describe a valid Monster.
+     */
+    public static Monster fromKey(long key) {
+        Color bodyColor = new Color((int) key, true);
+        long bits = key >>> 32;
+
+        Legs legs = decode(Legs.values(), bits, LEGS_BITS, key);
+        bits >>>= LEGS_BITS;
+        Horn horn = decode(Horn.values(), bits, HORN_BITS, key);
+        bits >>>= HORN_BITS;
+        MouthFill mouthFill = decode(MouthFill.values(), bits, MOUTH_FILL_BITS, key);
+        bits >>>= MOUTH_FILL_BITS;
+        MouthShape mouthShape = decode(MouthShape.values(), bits, MOUTH_SHAPE_BITS, key);
+        bits >>>= MOUTH_SHAPE_BITS;
+        Eyelid eyelid = decode(Eyelid.values(), bits, EYELID_BITS, key);
+        bits >>>= EYELID_BITS;
+        EyePlacement eyePlacement = decode(EyePlacement.values(), bits, EYE_PLACEMENT_BITS, key);
+        bits >>>= EYE_PLACEMENT_BITS;
+        EyeNumber eyeNumber = decode(EyeNumber.values(), bits, EYE_NUMBER_BITS, key);
+        bits >>>= EYE_NUMBER_BITS;
+        boolean includeTexture = (bits & 1) == 1;
+        bits >>>= TEXTURE_BITS;
+        Hair hair = decode(Hair.values(), bits, HAIR_BITS, key);
+        bits >>>= HAIR_BITS;
+        BodyShape bodyShape = decode(BodyShape.values(), bits, BODY_SHAPE_BITS, key);
+        bits >>>= BODY_SHAPE_BITS;
+
+        if (bits != 0)
+            throw new IllegalArgumentException("Unsupported key: " + Long.toHexString(key));
+
+        return new Monster(bodyShape, bodyColor, hair, includeTexture, eyeNumber, eyePlacement, eyelid, mouthShape, mouthFill, horn, legs);
+    }
+
+    private static <T> T decode(T[] values, long bits, int bitCount, long key) {
+        int ordinal = (int) (bits & ((1L << bitCount) - 1));
+        if (ordinal >= values.length)
+            throw new IllegalArgumentException("Unsupported key: " + Long.toHexString(key));
+        return values[ordinal];
+    }
+
+    private final long key;
+    private final int randomSeed;
 
     /**
      * Create a random Monster
@@ -52,36 +122,76 @@ public class Monster {
 
     public Monster(BodyShape bodyShape, Color bodyColor, Hair hair, boolean includeTexture, EyeNumber eyeNumber, EyePlacement eyePlacement,
                    Eyelid eyelid, MouthShape mouthShape, MouthFill mouthFill, Horn horn, Legs legs) {
-        this.bodyShape = hash(bodyShape);
-        this.bodyColor = hash(bodyColor);
-        this.includeTexture = hash(includeTexture);
-        this.hair = hash(hair);
-        this.eyeNumber = hash(eyeNumber);
-        this.eyePlacement = hash(eyePlacement);
-        this.eyelid = hash(eyelid);
-        this.mouthShape = hash(mouthShape);
-        this.mouthFill = hash(mouthFill);
-        this.horn = hash(horn);
-        this.legs = hash(legs);
-    }
+        this.bodyShape = Objects.requireNonNull(bodyShape);
+        this.bodyColor = Objects.requireNonNull(bodyColor);
+        this.includeTexture = includeTexture;
+        this.hair = Objects.requireNonNull(hair);
+        this.eyeNumber = Objects.requireNonNull(eyeNumber);
+        this.eyePlacement = Objects.requireNonNull(eyePlacement);
+        this.eyelid = Objects.requireNonNull(eyelid);
+        this.mouthShape = Objects.requireNonNull(mouthShape);
+        this.mouthFill = Objects.requireNonNull(mouthFill);
+        this.horn = Objects.requireNonNull(horn);
+        this.legs = Objects.requireNonNull(legs);
+
+        long k = bodyShape.ordinal();
+        k = (k << HAIR_BITS) + hair.ordinal();
+        k = (k << TEXTURE_BITS) + (includeTexture ? 1 : 0);
+        k = (k << EYE_NUMBER_BITS) + eyeNumber.ordinal();
+        k = (k << EYE_PLACEMENT_BITS) + eyePlacement.ordinal();
+        k = (k << EYELID_BITS) + eyelid.ordinal();
+        k = (k << MOUTH_SHAPE_BITS) + mouthShape.ordinal();
+        k = (k << MOUTH_FILL_BITS) + mouthFill.ordinal();
+        k = (k << HORN_BITS) + horn.ordinal();
+        k = (k << LEGS_BITS) + legs.ordinal();
+        key = (k << 32) | (bodyColor.getRGB() & 0xffffffffL);
 
-    private <T> T hash(T value) {
-        int incomingHash = 0;
-        if (value != null) {
-            Class z = value.getClass();
-            Object[] constants = z.getEnumConstants();
-            if (constants != null) {
-                incomingHash = Arrays.asList(constants).indexOf(value);
-            }
+        // This reproduces the seed monster-generator 1.0 used, so existing monsters keep their
+        // appearance. The slots for the color and texture are always zero.
+        int seed = 0;
+        for (int ordinal : new int[] { bodyShape.ordinal(), 0, 0, hair.ordinal(), eyeNumber.ordinal(),
+                eyePlacement.ordinal(), eyelid.ordinal(), mouthShape.ordinal(), mouthFill.ordinal(),
+                horn.ordinal(), legs.ordinal() }) {
+            seed = (seed << 2) + ordinal;
         }
+        randomSeed = seed;
+    }
 
-        hashcode = (hashcode << 2) + incomingHash;
+    /**
+     * Return a 64-bit value that uniquely identifies this Monster. Two Monsters are equal if and
+     * only if their keys are equal, and {@link #fromKey(long)} converts a key back into a Monster.
+     * <p>
+     * The lower 32 bits are the ARGB value of the {@link #bodyColor}, and the upper bits pack
+     * the ordinal of each enum attribute.
+     */
+    public long toKey() {
+        return key;
+    }
 
-        return value;
+    /**
+     * Return the seed renderers use to randomize this Monster's details (the shape of its fur,
+     * the position of its eyes, etc.).
+     * <p>
+     * Unlike {@link #toKey()} this is NOT unique: it intentionally ignores the {@link #bodyColor}
+     * and {@link #includeTexture}, so changing only those attributes recolors the same
+     * monster instead of rearranging it. This value must not change between releases, or
+     * every monster would look different.
+     */
+    public int getRandomSeed() {
+        return randomSeed;
     }
 
     @Override
     public int hashCode() {
-        return hashcode;
+        return Long.hashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof Monster other))
+            return false;
+        return key == other.key;
     }
 }
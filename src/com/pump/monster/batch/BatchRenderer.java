@@ -0,0 +1,421 @@
+package com.pump.monster.batch;
+
+import com.pump.awt.Dimension2D;
+import com.pump.geom.TransformUtils;
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.BodyTexture;
+import com.pump.monster.Monster;
+import com.pump.monster.render.MonsterRenderer;
+import com.pump.monster.render.RenderMetrics;
+import com.pump.monster.render.RenderStatistics;
+import com.pump.monster.render.StageTimer;
+import com.pump.monster.ui.PNGEncoder;
+import com.pump.monster.ui.SVGWriter;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This renders large numbers of monsters to PNG and/or SVG files without any UI.
+ * <p>
+ * Work is split into three stages:
+ * <ol>
+ *     <li>Geometry: building the monster's VectorImage. This runs on a ForkJoinPool sized
+ *     to the number of available processors, so idle threads steal work from busy threads.</li>
+ *     <li>Rasterization: painting the VectorImage into a BufferedImage (PNG only).</li>
+ *     <li>Encoding: writing the PNG/SVG files.</li>
+ * </ol>
+ * The stages are connected by bounded queues. When a downstream queue is full the upstream
+ * thread performs that work itself, so a slow disk applies backpressure instead of letting
+ * thousands of rendered images pile up on the heap.
+ */
+public class BatchRenderer {
+
+    public enum Format {
+        PNG("png"), SVG("svg");
+
+        public final String fileExtension;
+
+        Format(String fileExtension) {
+            this.fileExtension = fileExtension;
+        }
+    }
+
+    /**
+     * This renders a range of seeds. For example: "BatchRenderer out 0 10000 300 png,svg"
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: BatchRenderer outputDir startSeed endSeed [width] [png,svg]");
+            System.exit(1);
+        }
+        File dir = new File(args[0]);
+        long startSeed = Long.parseLong(args[1]);
+        long endSeed = Long.parseLong(args[2]);
+
+        BatchRenderer renderer = new BatchRenderer(dir);
+        if (args.length > 3)
+            renderer.setWidth(Integer.parseInt(args[3]));
+        if (args.length > 4) {
+            Set<Format> formats = EnumSet.noneOf(Format.class);
+            for (String s : args[4].split(",")) {
+                formats.add(Format.valueOf(s.trim().toUpperCase()));
+            }
+            renderer.setFormats(formats);
+        }
+        RenderStatistics statistics = new RenderStatistics();
+        renderer.setMetrics(statistics);
+
+        long t = System.currentTimeMillis();
+        long count = renderer.renderSeeds(startSeed, endSeed);
+        t = System.currentTimeMillis() - t;
+        System.out.println("Wrote " + count + " files to " + dir.getAbsolutePath() + " in " + t + " ms");
+        System.out.println(statistics);
+    }
+
+    /**
+     * One monster moving through the pipeline.
+     */
+    private static class Job {
+        final String name;
+        final Monster monster;
+        VectorImage image;
+        VectorImage svgImage;
+        BufferedImage bufferedImage;
+
+        Job(String name, Monster monster) {
+            this.name = name;
+            this.monster = monster;
+        }
+    }
+
+    private final File outputDirectory;
+    private int width = 300;
+    private Set<Format> formats = EnumSet.of(Format.PNG);
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 32;
+    private RenderMetrics metrics;
+    private boolean compactSVG;
+
+    public BatchRenderer(File outputDirectory) {
+        this.outputDirectory = Objects.requireNonNull(outputDirectory);
+    }
+
+    /**
+     * Set the width of each exported image. The height is derived from each monster's aspect ratio.
+     */
+    public void setWidth(int width) {
+        if (width <= 2)
+            throw new IllegalArgumentException("width (" + width + ") must be greater than 2");
+        this.width = width;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setFormats(Set<Format> formats) {
+        if (formats.isEmpty())
+            throw new IllegalArgumentException("at least one format is required");
+        this.formats = EnumSet.copyOf(formats);
+    }
+
+    public Set<Format> getFormats() {
+        return Collections.unmodifiableSet(formats);
+    }
+
+    /**
+     * Set the number of threads used for each stage. By default this is the number of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism (" + parallelism + ") must be at least 1");
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the maximum number of monsters that can wait between two stages.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queueCapacity (" + queueCapacity + ") must be at least 1");
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Toggle whether SVGs are written in the SVGWriter's compact mode.
+     *
+     * @see SVGWriter#setCompact(boolean)
+     */
+    public void setCompactSVG(boolean compactSVG) {
+        this.compactSVG = compactSVG;
+    }
+
+    public boolean isCompactSVG() {
+        return compactSVG;
+    }
+
+    /**
+     * Set the RenderMetrics every stage of this pipeline reports to, or null to disable metrics.
+     */
+    public void setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Render every seed from startSeed (inclusive) to endSeed (exclusive). Each monster
+     * is created using {@code new Monster(new Random(seed))}, and its files are named after its seed.
+     *
+     * @return the number of files written.
+     */
+    public long renderSeeds(long startSeed, long endSeed) throws IOException, InterruptedException {
+        if (endSeed < startSeed)
+            throw new IllegalArgumentException("endSeed (" + endSeed + ") must not be less than startSeed (" + startSeed + ")");
+        if (endSeed - startSeed > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many seeds: " + (endSeed - startSeed));
+
+        int size = (int) (endSeed - startSeed);
+        return render(size, index -> {
+            long seed = startSeed + index;
+            return new Job("monster-" + seed, new Monster(new Random(seed)));
+        });
+    }
+
+    /**
+     * Render a list of monsters. The files are named after each monster's index in the list.
+     *
+     * @return the number of files written.
+     */
+    public long render(List<Monster> monsters) throws IOException, InterruptedException {
+        List<Monster> copy = new ArrayList<>(monsters);
+        int digits = Integer.toString(Math.max(0, copy.size() - 1)).length();
+        return render(copy.size(), index -> {
+            StringBuilder name = new StringBuilder(Integer.toString(index));
+            while (name.length() < digits)
+                name.insert(0, '0');
+            return new Job("monster-" + name, Objects.requireNonNull(copy.get(index)));
+        });
+    }
+
+    private long render(int size, java.util.function.IntFunction<Job> jobFactory) throws IOException, InterruptedException {
+        outputDirectory.mkdirs();
+        if (!outputDirectory.isDirectory())
+            throw new IOException("Unable to create " + outputDirectory.getAbsolutePath());
+
+        AtomicLong fileCount = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ThreadPoolExecutor encodeExecutor = createStageExecutor("encode", Math.max(1, parallelism / 2));
+        ThreadPoolExecutor rasterExecutor = createStageExecutor("raster", parallelism);
+        ForkJoinPool geometryPool = new ForkJoinPool(parallelism);
+
+        try {
+            class GeometryTask extends RecursiveAction {
+                final int start, end;
+
+                GeometryTask(int start, int end) {
+                    this.start = start;
+                    this.end = end;
+                }
+
+                @Override
+                protected void compute() {
+                    if (end - start > 1) {
+                        int mid = (start + end) >>> 1;
+                        invokeAll(new GeometryTask(start, mid), new GeometryTask(mid, end));
+                        return;
+                    }
+
+                    if (failure.get() != null)
+                        return;
+
+                    try {
+                        Job job = jobFactory.apply(start);
+                        createGeometry(job);
+                        rasterExecutor.execute(() -> {
+                            if (failure.get() != null)
+                                return;
+                            try {
+                                rasterize(job);
+                                encodeExecutor.execute(() -> {
+                                    if (failure.get() != null)
+                                        return;
+                                    try {
+                                        fileCount.addAndGet(encode(job));
+                                    } catch (Throwable t) {
+                                        failure.compareAndSet(null, t);
+                                    }
+                                });
+                            } catch (Throwable t) {
+                                failure.compareAndSet(null, t);
+                            }
+                        });
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }
+
+            if (size > 0)
+                geometryPool.invoke(new GeometryTask(0, size));
+        } finally {
+            // shut every stage down before waiting for any of them, so an interrupt can't leave a stage running
+            geometryPool.shutdown();
+            rasterExecutor.shutdown();
+            encodeExecutor.shutdown();
+            try {
+                // raster tasks hand jobs to the encode stage, so they have to finish before the encode stage does
+                geometryPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                rasterExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                encodeExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                geometryPool.shutdownNow();
+                rasterExecutor.shutdownNow();
+                encodeExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException ioException)
+            throw ioException;
+        if (t instanceof RuntimeException runtimeException)
+            throw runtimeException;
+        if (t instanceof Error error)
+            throw error;
+        if (t != null)
+            throw new RuntimeException(t);
+
+        return fileCount.get();
+    }
+
+    /**
+     * Create an executor whose work queue holds at most {@link #queueCapacity} jobs. When the queue
+     * is full the submitting thread runs the job itself.
+     */
+    private ThreadPoolExecutor createStageExecutor(String stageName, int threadCount) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            int ctr = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BatchRenderer-" + stageName + "-" + (ctr++));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        // When the queue is full the submitting thread runs the task itself. Unlike CallerRunsPolicy this
+        // also happens after shutdown(): render() shuts down the encode stage while raster tasks may still
+        // be handing jobs to it, and those jobs must not be discarded.
+        RejectedExecutionHandler callerRuns = (task, executor) -> task.run();
+        return new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, callerRuns);
+    }
+
+    private VectorImage createImage(Monster monster) {
+        MonsterRenderer renderer = new MonsterRenderer(monster);
+        renderer.setMetrics(metrics);
+        return renderer.getImage();
+    }
+
+    private void createGeometry(Job job) {
+        job.image = createImage(job.monster);
+        if (formats.contains(Format.SVG)) {
+            // the SVGWriter doesn't support textures
+            job.svgImage = job.monster.includeTexture ? BodyTexture.removeTextures(job.image) : job.image;
+        }
+    }
+
+    private void rasterize(Job job) {
+        if (!formats.contains(Format.PNG))
+            return;
+
+        StageTimer timer = metrics == null ? null : new StageTimer(metrics);
+        if (timer != null)
+            timer.start();
+
+        Rectangle2D imgBounds = job.image.getBounds();
+        Dimension size = getSize(imgBounds);
+        BufferedImage bi = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        g.transform(TransformUtils.createAffineTransform(imgBounds,
+                new Rectangle(1, 1, size.width - 2, size.height - 2)));
+        job.image.paint(g);
+        g.dispose();
+        job.bufferedImage = bi;
+
+        if (timer != null) {
+            timer.stop(RenderMetrics.Stage.RASTERIZE, job.image.getOperations().size());
+            timer.flush();
+        }
+    }
+
+    private int encode(Job job) throws IOException {
+        StageTimer timer = metrics == null ? null : new StageTimer(metrics);
+        int count = 0;
+        if (job.bufferedImage != null) {
+            if (timer != null)
+                timer.start();
+            // the encode executor already keeps our threads busy, so each PNG is compressed serially
+            PNGEncoder pngEncoder = new PNGEncoder();
+            pngEncoder.setParallel(false);
+            try (OutputStream out = new FileOutputStream(getFile(job, Format.PNG))) {
+                pngEncoder.write(job.bufferedImage, out);
+            }
+            job.bufferedImage = null;
+            count++;
+            if (timer != null)
+                timer.stop(RenderMetrics.Stage.ENCODE_PNG, 0);
+        }
+        if (job.svgImage != null) {
+            if (timer != null)
+                timer.start();
+            SVGWriter svgWriter = new SVGWriter();
+            svgWriter.setCompact(compactSVG);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(getFile(job, Format.SVG)))) {
+                svgWriter.write(job.svgImage, getSize(job.svgImage.getBounds()), out);
+            }
+            if (timer != null)
+                timer.stop(RenderMetrics.Stage.ENCODE_SVG, job.svgImage.getOperations().size());
+            job.svgImage = null;
+            count++;
+        }
+        if (timer != null)
+            timer.flush();
+        job.image = null;
+        return count;
+    }
+
+    private Dimension getSize(Rectangle2D imgBounds) {
+        return Dimension2D.scaleProportionally(imgBounds.getBounds().getSize(),
+                new Dimension(width, width * 10));
+    }
+
+    private File getFile(Job job, Format format) {
+        return new File(outputDirectory, job.name + "." + format.fileExtension);
+    }
+}
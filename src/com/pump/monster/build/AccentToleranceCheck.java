@@ -0,0 +1,196 @@
+package com.pump.monster.build;
+
+import com.pump.geom.Clipper;
+import com.pump.graphics.vector.Operation;
+import com.pump.graphics.vector.ShapeOperation;
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.BodyShape;
+import com.pump.monster.Hair;
+import com.pump.monster.Monster;
+import com.pump.monster.render.BodyRenderer;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This compares the analytic body accents (see {@link BodyRenderer#createWedgeAccents(CubicCurve2D, Line2D, double)}
+ * and {@link BodyRenderer#createCrescent(Rectangle2D, double, double)}) against the boolean geometry they
+ * replaced, and exits with a nonzero status if they differ by more than our tolerances.
+ * <p>
+ * Differences are measured as the area of the symmetric difference divided by the area of the
+ * original shape. This also checks that the accents of SHAGGY bodies (which are no longer clipped
+ * to the body) stay inside the body.
+ */
+public class AccentToleranceCheck {
+
+    /**
+     * The maximum average difference of all the wedge highlights, wedge shadows or crescents.
+     */
+    static final double MAX_AVERAGE_DIFFERENCE = .02;
+
+    /**
+     * The maximum difference of any one wedge highlight or crescent.
+     */
+    static final double MAX_DIFFERENCE = .04;
+
+    /**
+     * The maximum difference of any one wedge shadow. These are thin slivers, so small differences
+     * near the tip are a larger fraction of their area.
+     */
+    static final double MAX_SHADOW_DIFFERENCE = .08;
+
+    /**
+     * The maximum fraction of the SHAGGY accents' area that may be outside of the body.
+     */
+    static final double MAX_OUTSIDE_BODY = .01;
+
+    static final int WEDGE_COUNT = 300;
+    static final int CRESCENT_COUNT = 50;
+    static final int BODY_SEED_COUNT = 20;
+
+    public static void main(String[] args) {
+        boolean passed = checkWedges();
+        passed &= checkCrescents();
+        passed &= checkShaggyBodies();
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed)
+            System.exit(1);
+    }
+
+    /**
+     * Compare random wedges (built like {@code Body.applyShaggyEdge} builds them) against the
+     * Clipper/Area accents.
+     */
+    private static boolean checkWedges() {
+        Random random = new Random(0);
+        Stroke stroke = new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        Statistics highlights = new Statistics("wedge highlights", MAX_DIFFERENCE);
+        Statistics shadows = new Statistics("wedge shadows", MAX_SHADOW_DIFFERENCE);
+        for (int a = 0; a < WEDGE_COUNT; a++) {
+            double span = (12 + 8 * random.nextDouble()) * 2 / 3;
+            double height = 6 + 4 * random.nextDouble();
+            double wedgeSize = .3 + .4 * random.nextDouble();
+            double tipDistance = span / 2 + random.nextDouble() * span;
+
+            // the wedges on either side of a body point in opposite directions
+            AffineTransform tx = AffineTransform.getRotateInstance(random.nextDouble() * 2 * Math.PI);
+            tx.scale(1, random.nextBoolean() ? 1 : -1);
+            Point2D p0 = tx.transform(new Point2D.Double(0, 0), null);
+            Point2D p2 = tx.transform(new Point2D.Double(span, 0), null);
+            Point2D tip = tx.transform(new Point2D.Double(tipDistance, -height), null);
+            Point2D spike = tx.transform(new Point2D.Double(0, -height), null);
+
+            CubicCurve2D cubic = new CubicCurve2D.Double(p0.getX(), p0.getY(),
+                    spike.getX() * wedgeSize + p0.getX() * (1 - wedgeSize), spike.getY() * wedgeSize + p0.getY() * (1 - wedgeSize),
+                    spike.getX() * wedgeSize + tip.getX() * (1 - wedgeSize), spike.getY() * wedgeSize + tip.getY() * (1 - wedgeSize),
+                    tip.getX(), tip.getY());
+            Line2D line = new Line2D.Double(tip, p2);
+
+            Path2D wedge = new Path2D.Double();
+            wedge.moveTo(p0.getX(), p0.getY());
+            wedge.append(cubic, true);
+            wedge.append(line, true);
+
+            // this is how the accents were built before they were analytic:
+            Shape expectedHighlight = Clipper.intersect(.01f, wedge, stroke.createStrokedShape(cubic));
+            Area expectedShadow = new Area(Clipper.intersect(.01f, wedge, stroke.createStrokedShape(line)));
+            expectedShadow.subtract(new Area(expectedHighlight));
+
+            Path2D[] accents = BodyRenderer.createWedgeAccents(cubic, line, 1.5);
+            highlights.add(expectedHighlight, accents[0]);
+            shadows.add(expectedShadow, accents[1]);
+        }
+        return highlights.report() & shadows.report();
+    }
+
+    /**
+     * Compare random crescents against an ellipse minus a translated copy of itself.
+     */
+    private static boolean checkCrescents() {
+        Random random = new Random(0);
+        Statistics crescents = new Statistics("crescents", MAX_DIFFERENCE);
+        for (int a = 0; a < CRESCENT_COUNT; a++) {
+            Rectangle2D bounds = new Rectangle2D.Double(random.nextDouble() * 10, random.nextDouble() * 10,
+                    50 + random.nextDouble() * 100, 50 + random.nextDouble() * 100);
+            double dx = 1 + 2 * random.nextDouble();
+            double dy = 1 + 2 * random.nextDouble();
+            if (random.nextBoolean()) {
+                dx = -dx;
+                dy = -dy;
+            }
+
+            Area ellipse = new Area(new Ellipse2D.Double(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight()));
+            Area expected = new Area(ellipse);
+            expected.subtract(ellipse.createTransformedArea(AffineTransform.getTranslateInstance(dx, dy)));
+
+            crescents.add(expected, BodyRenderer.createCrescent(bounds, dx, dy));
+        }
+        return crescents.report();
+    }
+
+    /**
+     * Check that the accents of real SHAGGY bodies stay inside the body.
+     */
+    private static boolean checkShaggyBodies() {
+        double accentArea = 0;
+        double outsideArea = 0;
+        for (BodyShape bodyShape : BodyShape.values()) {
+            for (int seed = 0; seed < BODY_SEED_COUNT; seed++) {
+                BodyRenderer renderer = new BodyRenderer(new Rectangle(0, 0, 100, 100), Hair.SHAGGY,
+                        Monster.TEAL, bodyShape, false, seed);
+                VectorImage image = renderer.getBodyImage();
+
+                // SHAGGY bodies have no background, so the first operation fills the body and everything
+                // after it is an accent
+                List<Operation> operations = image.getOperations();
+                Shape body = getShape(operations.get(0));
+                for (Operation op : operations.subList(1, operations.size())) {
+                    Shape accent = getShape(op);
+                    accentArea += ShapeMetrics.getArea(accent);
+                    outsideArea += ShapeMetrics.getDifference(accent, body);
+                }
+            }
+        }
+
+        double outside = outsideArea / accentArea;
+        boolean passed = outside <= MAX_OUTSIDE_BODY;
+        System.out.println(String.format("%-20s %.4f of the accents are outside the body (max %.4f) %s",
+                "SHAGGY bodies", outside, MAX_OUTSIDE_BODY, passed ? "" : "FAILED"));
+        return passed;
+    }
+
+    private static Shape getShape(Operation op) {
+        ShapeOperation shapeOp = (ShapeOperation) op;
+        return shapeOp.getContext().getTransform().createTransformedShape(shapeOp.getShape());
+    }
+
+    private static class Statistics {
+        final String name;
+        final double maxDifference;
+        double expectedArea, differenceArea, worstDifference;
+
+        Statistics(String name, double maxDifference) {
+            this.name = name;
+            this.maxDifference = maxDifference;
+        }
+
+        void add(Shape expected, Shape actual) {
+            double area = ShapeMetrics.getArea(expected);
+            double difference = ShapeMetrics.getSymmetricDifference(expected, actual);
+            expectedArea += area;
+            differenceArea += difference;
+            if (area > 0)
+                worstDifference = Math.max(worstDifference, difference / area);
+        }
+
+        boolean report() {
+            double average = differenceArea / expectedArea;
+            boolean passed = average <= MAX_AVERAGE_DIFFERENCE && worstDifference <= maxDifference;
+            System.out.println(String.format("%-20s %.4f average difference (max %.4f), %.4f worst (max %.4f) %s",
+                    name, average, MAX_AVERAGE_DIFFERENCE, worstDifference, maxDifference, passed ? "" : "FAILED"));
+            return passed;
+        }
+    }
+}
@@ -9,10 +9,10 @@ import com.pump.io.IOUtils;
 import com.pump.monster.Monster;
 import com.pump.monster.render.MonsterRenderer;
 import com.pump.monster.ui.MonsterFrame;
+import com.pump.monster.ui.PNGEncoder;
 import com.pump.monster.ui.SVGWriter;
 import com.pump.release.Project;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -79,7 +79,7 @@ public class JarBuilder {
         img.paint(g);
 
         try (OutputStream out = new AdjacentFile(pngFile).createOutputStream()) {
-            ImageIO.write(bi, "png", out);
+            new PNGEncoder().write(bi, out);
         }
 
         System.out.println("Wrote: " + pngFile);
@@ -0,0 +1,227 @@
+package com.pump.monster.build;
+
+import com.pump.awt.HSLColor;
+import com.pump.geom.Clipper;
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.Legs;
+import com.pump.monster.Monster;
+import com.pump.monster.render.BodyRenderer;
+import com.pump.monster.render.LegsRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * This compares the legs the LegsRenderer paints against the way legs used to be painted (with
+ * Area subtractions for the shadows and highlights, and toe shadows clipped to every set of legs),
+ * and exits with a nonzero status if too many pixels differ.
+ * <p>
+ * Each monster is painted at a large scale with its legs, its body and its toe shadows, so this covers
+ * every difference the new shading introduced: the edges of the shading, the corners where the shadow
+ * is now painted over the highlight, and the toe shadows.
+ * <p>
+ * Usage: LegShadingCheck [outputDir]. If an output directory is given, this writes the old, new and
+ * diff images of the monster that differs the most.
+ */
+public class LegShadingCheck {
+
+    /**
+     * Two pixels are different if any channel differs by more than this.
+     */
+    static final int CHANNEL_TOLERANCE = 3;
+
+    /**
+     * The maximum average fraction of leg pixels that may differ.
+     */
+    static final double MAX_AVERAGE_DIFFERENCE = .03;
+
+    /**
+     * The maximum fraction of leg pixels that may differ for any one monster.
+     */
+    static final double MAX_DIFFERENCE = .05;
+
+    static final int MONSTER_COUNT = 40;
+    static final int SCALE = 8;
+
+    public static void main(String[] args) throws IOException {
+        File outputDir = args.length > 0 ? new File(args[0]) : null;
+
+        Random random = new Random(0);
+        int monsterCtr = 0;
+        double sum = 0;
+        double worst = 0;
+        while (monsterCtr < MONSTER_COUNT) {
+            Monster monster = new Monster(random);
+            if (monster.legs == Legs.NONE)
+                continue;
+            monsterCtr++;
+
+            BodyRenderer bodyRenderer = new BodyRenderer(new Rectangle(0, 0, 100, 100), monster.hair,
+                    monster.bodyColor, monster.bodyShape, false, monster.getRandomSeed());
+            LegsRenderer legsRenderer = new LegsRenderer(bodyRenderer, monster.legs);
+
+            Rectangle2D bounds = bodyRenderer.getBodyImage().getBounds().getBounds2D();
+            Area legArea = new Area();
+            for (Shape legShape : legsRenderer.getLegShapes()) {
+                legArea.add(new Area(legShape));
+            }
+            bounds.add(legArea.getBounds2D());
+            bounds.setFrame(bounds.getX() - 2, bounds.getY() - 2, bounds.getWidth() + 4, bounds.getHeight() + 4);
+
+            BufferedImage expected = createImage(bounds);
+            Graphics2D g = createGraphics(expected, bounds);
+            paintOldLegs(g, bodyRenderer, legsRenderer, monster.bodyColor);
+            g.dispose();
+
+            VectorImage vi = new VectorImage();
+            legsRenderer.paintUnderBody(vi);
+            bodyRenderer.paint(vi);
+            legsRenderer.paintAboveBody(vi);
+            BufferedImage actual = createImage(bounds);
+            g = createGraphics(actual, bounds);
+            vi.paint(g);
+            g.dispose();
+
+            BufferedImage legMask = createImage(bounds);
+            g = createGraphics(legMask, bounds);
+            g.fill(legArea);
+            g.dispose();
+
+            double difference = getDifference(expected, actual, legMask);
+            sum += difference;
+            System.out.println(String.format("%-6s %-8s %-8s %.4f", monster.legs, monster.hair, monster.bodyShape, difference));
+            if (difference > worst) {
+                worst = difference;
+                if (outputDir != null) {
+                    ImageIO.write(expected, "png", new File(outputDir, "legs-old.png"));
+                    ImageIO.write(actual, "png", new File(outputDir, "legs-new.png"));
+                    ImageIO.write(createDiffImage(expected, actual), "png", new File(outputDir, "legs-diff.png"));
+                }
+            }
+        }
+
+        double average = sum / MONSTER_COUNT;
+        boolean passed = average <= MAX_AVERAGE_DIFFERENCE && worst <= MAX_DIFFERENCE;
+        System.out.println(String.format("%.4f of leg pixels differ on average (max %.4f), %.4f worst (max %.4f)",
+                average, MAX_AVERAGE_DIFFERENCE, worst, MAX_DIFFERENCE));
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed)
+            System.exit(1);
+    }
+
+    private static BufferedImage createImage(Rectangle2D bounds) {
+        return new BufferedImage((int) Math.ceil(bounds.getWidth() * SCALE), (int) Math.ceil(bounds.getHeight() * SCALE),
+                BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static Graphics2D createGraphics(BufferedImage bi, Rectangle2D bounds) {
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.scale(SCALE, SCALE);
+        g.translate(-bounds.getX(), -bounds.getY());
+        return g;
+    }
+
+    /**
+     * Paint the legs and the body the way LegsRenderer used to, before the shading was built from
+     * swept edges.
+     */
+    private static void paintOldLegs(Graphics2D g, BodyRenderer bodyRenderer, LegsRenderer legsRenderer, Color color) {
+        Shape[] legShapes = legsRenderer.getLegShapes();
+        Path2D toes = new Path2D.Double();
+        for (Shape toePath : legsRenderer.getToePaths()) {
+            toes.append(toePath, false);
+        }
+        Shape strokedToes = new BasicStroke(.5f).createStrokedShape(toes);
+
+        paintOldLegs(g, legShapes[0], color, .96f);
+        paintOldLegs(g, legShapes[1], color, .98f);
+        paintOldToes(g, strokedToes, legShapes);
+
+        bodyRenderer.getBodyImage().paint(g);
+
+        paintOldLegs(g, legShapes[2], color, 1);
+        paintOldToes(g, strokedToes, legShapes);
+    }
+
+    private static void paintOldLegs(Graphics2D g, Shape path, Color color, float luminanceMultiplier) {
+        g.setColor(HSLColor.transform(color, 0, 1, luminanceMultiplier));
+        g.fill(path);
+
+        Rectangle2D pathBounds = path.getBounds2D();
+
+        Path2D p = new Path2D.Double();
+        p.append(path, false);
+        p.transform(AffineTransform.getTranslateInstance(0, -1.5));
+        Area shadowArea = new Area(path);
+        shadowArea.subtract(new Area(p));
+        g.setPaint(new GradientPaint(0, (float) (pathBounds.getMinY() + pathBounds.getHeight() * .25f), new Color(0,0,0,0),
+                0, (float) pathBounds.getMaxY(), new Color(0,0,0,40)));
+        g.fill(shadowArea);
+
+        p.reset();
+        p.append(path, false);
+        p.transform(AffineTransform.getTranslateInstance(1,1));
+        Area highlightArea = new Area(path);
+        highlightArea.subtract(new Area(p));
+        highlightArea.subtract(shadowArea);
+        g.setPaint(new GradientPaint(0, (float) (pathBounds.getMinY() + pathBounds.getHeight() * .1f), new Color(255,255,255,0),
+                0, (float) pathBounds.getMaxY(), new Color(255,255,255,20)));
+        g.fill(highlightArea);
+    }
+
+    private static void paintOldToes(Graphics2D g, Shape strokedToes, Shape[] legShapes) {
+        g.setColor(new Color(0,0,0,40));
+        for (Shape legShape : legShapes) {
+            g.fill(Clipper.intersect(.01f, strokedToes, legShape));
+        }
+    }
+
+    /**
+     * Return the number of pixels that differ divided by the number of pixels the legs cover.
+     */
+    private static double getDifference(BufferedImage expected, BufferedImage actual, BufferedImage legMask) {
+        long legPixels = 0;
+        long differentPixels = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (legMask.getRGB(x, y) != 0)
+                    legPixels++;
+                if (getChannelDifference(expected.getRGB(x, y), actual.getRGB(x, y)) > CHANNEL_TOLERANCE)
+                    differentPixels++;
+            }
+        }
+        return ((double) differentPixels) / legPixels;
+    }
+
+    private static int getChannelDifference(int argb1, int argb2) {
+        int returnValue = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            returnValue = Math.max(returnValue, Math.abs(((argb1 >> shift) & 0xff) - ((argb2 >> shift) & 0xff)));
+        }
+        return returnValue;
+    }
+
+    private static BufferedImage createDiffImage(BufferedImage expected, BufferedImage actual) {
+        BufferedImage returnValue = new BufferedImage(expected.getWidth(), expected.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int argb = expected.getRGB(x, y);
+                if (getChannelDifference(argb, actual.getRGB(x, y)) > CHANNEL_TOLERANCE) {
+                    returnValue.setRGB(x, y, 0xff0000);
+                } else {
+                    returnValue.setRGB(x, y, argb == 0 ? 0xffffff : 0x888888);
+                }
+            }
+        }
+        return returnValue;
+    }
+}
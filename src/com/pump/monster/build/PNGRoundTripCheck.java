@@ -0,0 +1,173 @@
+package com.pump.monster.build;
+
+import com.pump.monster.ui.PNGEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This writes images with the {@link PNGEncoder}, reads them back with ImageIO and compares every pixel.
+ * It exits with a nonzero status if any image doesn't match.
+ * <p>
+ * This covers palette images, RGBA images, images large enough to be compressed as several blocks
+ * (in parallel and serially), and images written a strip at a time with a {@link PNGEncoder.RowWriter}
+ * where the last strip is shorter than the others.
+ */
+public class PNGRoundTripCheck {
+
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    /**
+     * This image has more than 1 MB (the size of a compressed block) of image data.
+     */
+    private static final Dimension LARGE_SIZE = new Dimension(1100, 1000);
+
+    private static final String PARALLELISM_PROPERTY = "java.util.concurrent.ForkJoinPool.common.parallelism";
+
+    private static boolean passed = true;
+
+    public static void main(String[] args) throws IOException {
+        // the encoder only compresses in parallel if the common pool has several threads, so make sure
+        // we cover that path even on a single-core machine. (This has to happen before the pool is created.)
+        if (System.getProperty(PARALLELISM_PROPERTY) == null)
+            System.setProperty(PARALLELISM_PROPERTY, "4");
+
+        Random random = new Random(0);
+        for (boolean parallel : new boolean[] { true, false }) {
+            PNGEncoder encoder = new PNGEncoder();
+            encoder.setParallel(parallel);
+            String suffix = parallel ? ", parallel (" + ForkJoinPool.getCommonPoolParallelism() + " threads)" : ", serial";
+
+            BufferedImage palette = createRectangles(random, 300, 200, BufferedImage.TYPE_INT_ARGB);
+            check("palette" + suffix, palette, write(encoder, palette), COLOR_TYPE_PALETTE);
+
+            BufferedImage rgba = createEllipses(random, 300, 200, BufferedImage.TYPE_INT_ARGB);
+            check("RGBA" + suffix, rgba, write(encoder, rgba), COLOR_TYPE_RGBA);
+
+            BufferedImage premultiplied = createEllipses(random, 300, 200, BufferedImage.TYPE_INT_ARGB_PRE);
+            check("RGBA premultiplied" + suffix, premultiplied, write(encoder, premultiplied), COLOR_TYPE_RGBA);
+
+            BufferedImage largePalette = createRectangles(random, LARGE_SIZE.width, LARGE_SIZE.height, BufferedImage.TYPE_INT_ARGB);
+            check("large palette" + suffix, largePalette, write(encoder, largePalette), COLOR_TYPE_PALETTE);
+
+            BufferedImage large = createNoise(random, LARGE_SIZE.width, LARGE_SIZE.height);
+            check("large RGBA" + suffix, large, write(encoder, large), COLOR_TYPE_RGBA);
+
+            // the first write() has every row, so this uses the same path as write(BufferedImage, ...)
+            check("RowWriter, one strip" + suffix, palette, writeStrips(encoder, palette, palette.getHeight()), COLOR_TYPE_PALETTE);
+
+            // 300 rows per strip, so the last of the 4 strips is 100 rows
+            check("RowWriter, large strips" + suffix, large, writeStrips(encoder, large, 300), COLOR_TYPE_RGBA);
+
+            // 7 rows per strip, so the last of the 29 strips is 4 rows
+            check("RowWriter, small strips" + suffix, rgba, writeStrips(encoder, rgba, 7), COLOR_TYPE_RGBA);
+        }
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+        if (!passed)
+            System.exit(1);
+    }
+
+    private static byte[] write(PNGEncoder encoder, BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.write(image, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Write an image with a RowWriter the way the TiledRasterizer passes strips to it: every strip
+     * is copied into the same BufferedImage, and the last strip is a subimage of it.
+     */
+    private static byte[] writeStrips(PNGEncoder encoder, BufferedImage image, int stripHeight) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedImage strip = new BufferedImage(image.getWidth(), stripHeight, BufferedImage.TYPE_INT_ARGB);
+        try (PNGEncoder.RowWriter rowWriter = encoder.createRowWriter(image.getWidth(), image.getHeight(), out)) {
+            for (int y = 0; y < image.getHeight(); y += stripHeight) {
+                int rowCount = Math.min(stripHeight, image.getHeight() - y);
+                BufferedImage rows = rowCount == stripHeight ? strip : strip.getSubimage(0, 0, image.getWidth(), rowCount);
+                Graphics2D g = rows.createGraphics();
+                g.setComposite(AlphaComposite.Src);
+                g.drawImage(image, 0, -y, null);
+                g.dispose();
+                rowWriter.write(rows);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void check(String name, BufferedImage expected, byte[] png, int expectedColorType) throws IOException {
+        // the color type is the 10th byte of the IHDR chunk, which starts after the 8-byte signature
+        int colorType = png[8 + 8 + 9];
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(png));
+
+        int differentPixels = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int argb1 = expected.getRGB(x, y);
+                int argb2 = actual.getRGB(x, y);
+                // the color of a transparent pixel doesn't matter
+                if (argb1 != argb2 && (argb1 >>> 24 != 0 || argb2 >>> 24 != 0))
+                    differentPixels++;
+            }
+        }
+
+        boolean imagePassed = differentPixels == 0 && colorType == expectedColorType &&
+                actual.getWidth() == expected.getWidth() && actual.getHeight() == expected.getHeight();
+        passed &= imagePassed;
+        System.out.println(String.format("%-50s %dx%d, color type %d (expected %d), %d bytes, %d different pixels %s",
+                name, actual.getWidth(), actual.getHeight(), colorType, expectedColorType, png.length,
+                differentPixels, imagePassed ? "" : "FAILED"));
+    }
+
+    /**
+     * Create an image of opaque and translucent rectangles with fewer than 256 colors.
+     */
+    private static BufferedImage createRectangles(Random random, int width, int height, int type) {
+        BufferedImage bi = new BufferedImage(width, height, type);
+        Graphics2D g = bi.createGraphics();
+        for (int a = 0; a < 30; a++) {
+            g.setColor(new Color(random.nextInt(), random.nextBoolean()));
+            g.setComposite(AlphaComposite.Src);
+            g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width) + 1, random.nextInt(height) + 1);
+        }
+        g.dispose();
+        return bi;
+    }
+
+    /**
+     * Create an image of antialiased translucent ellipses, which has too many colors for a palette.
+     */
+    private static BufferedImage createEllipses(Random random, int width, int height, int type) {
+        BufferedImage bi = new BufferedImage(width, height, type);
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        for (int a = 0; a < 30; a++) {
+            g.setColor(new Color(random.nextInt(), true));
+            g.fill(new Ellipse2D.Double(random.nextDouble() * width, random.nextDouble() * height,
+                    random.nextDouble() * width / 2, random.nextDouble() * height / 2));
+        }
+        g.dispose();
+        return bi;
+    }
+
+    /**
+     * Create an image of random pixels. This barely compresses, so it is compressed as several blocks.
+     */
+    private static BufferedImage createNoise(Random random, int width, int height) {
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                bi.setRGB(x, y, random.nextInt());
+            }
+        }
+        return bi;
+    }
+}
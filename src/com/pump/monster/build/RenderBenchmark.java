@@ -0,0 +1,269 @@
+package com.pump.monster.build;
+
+import com.pump.geom.TransformUtils;
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.*;
+import com.pump.monster.render.*;
+import com.pump.monster.ui.PNGEncoder;
+import com.pump.monster.ui.SVGWriter;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * This measures the time and memory each stage of the renderer requires.
+ * <p>
+ * Each benchmark is warmed up and then run repeatedly for a fixed amount of time on a single
+ * thread. This reports the average time per operation and the average number of bytes allocated
+ * per operation (when the JVM supports per-thread allocation counters).
+ * <p>
+ * Usage: RenderBenchmark [regex] [warmUpMillis] [measureMillis]. The optional regex limits which
+ * benchmarks run, for example "Eyes.*" or ".*SHAGGY.*".
+ */
+public class RenderBenchmark {
+
+    private interface Task {
+        /**
+         * Perform one operation. The return value is retained so the JIT can't discard the work.
+         */
+        Object run() throws Exception;
+    }
+
+    private static class Result {
+        final String name;
+        final long operations;
+        final double nanosPerOperation;
+        final double bytesPerOperation;
+
+        Result(String name, long operations, double nanosPerOperation, double bytesPerOperation) {
+            this.name = name;
+            this.operations = operations;
+            this.nanosPerOperation = nanosPerOperation;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Pattern filter = Pattern.compile(args.length > 0 ? args[0] : ".*");
+        long warmUpMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        long measureMillis = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        RenderBenchmark benchmark = new RenderBenchmark(warmUpMillis, measureMillis);
+        Map<String, Task> tasks = createTasks();
+
+        System.out.println(String.format("%-50s %12s %14s %14s", "Benchmark", "Operations", "us/op", "KB/op"));
+        for (Map.Entry<String, Task> entry : tasks.entrySet()) {
+            if (!filter.matcher(entry.getKey()).matches())
+                continue;
+            Result result = benchmark.run(entry.getKey(), entry.getValue());
+            System.out.println(benchmark.format(result));
+        }
+    }
+
+    private static Map<String, Task> createTasks() throws IOException {
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        Rectangle bodyBounds = new Rectangle(0, 0, 100, 100);
+
+        // make sure the first texture-related benchmark doesn't include decoding
+        BodyTexture.warmUp();
+
+        for (BodyShape bodyShape : BodyShape.values()) {
+            for (Hair hair : Hair.values()) {
+                Monster m = createMonster(bodyShape, hair, EyeNumber.TWO, EyePlacement.NORMAL, MouthShape.GRIN, MouthFill.ALL_TEETH, Horn.NONE, Legs.NONE);
+                tasks.put("BodyRenderer(" + bodyShape + ", " + hair + ")", () -> {
+                    BodyRenderer.clearCache();
+                    return new BodyRenderer(bodyBounds, m.hair, m.bodyColor, m.bodyShape, m.includeTexture, m.getRandomSeed());
+                });
+                tasks.put("BodyRenderer.getBodyImage(" + bodyShape + ", " + hair + ")", () -> {
+                    BodyRenderer.clearCache();
+                    return new BodyRenderer(bodyBounds, m.hair, m.bodyColor, m.bodyShape, m.includeTexture, m.getRandomSeed()).getBodyImage();
+                });
+            }
+        }
+
+        for (EyePlacement eyePlacement : EyePlacement.values()) {
+            for (EyeNumber eyeNumber : EyeNumber.values()) {
+                Monster m = createMonster(BodyShape.CIRCLE, Hair.SHAGGY, eyeNumber, eyePlacement, MouthShape.GRIN, MouthFill.BLACK, Horn.NONE, Legs.NONE);
+                BodyRenderer body = createBodyRenderer(m);
+                tasks.put("EyesRenderer(" + eyePlacement + ", " + eyeNumber + ")", () -> new EyesRenderer(m, body));
+                tasks.put("EyesRenderer.paint(" + eyePlacement + ", " + eyeNumber + ")", () -> {
+                    VectorImage img = new VectorImage();
+                    new EyesRenderer(m, body).paint(img);
+                    return img;
+                });
+            }
+        }
+
+        for (MouthShape mouthShape : MouthShape.values()) {
+            for (MouthFill mouthFill : MouthFill.values()) {
+                Monster m = createMonster(BodyShape.SQUARE, Hair.NONE, EyeNumber.ONE, EyePlacement.NORMAL, mouthShape, mouthFill, Horn.NONE, Legs.NONE);
+                EyesRenderer eyes = new EyesRenderer(m, createBodyRenderer(m));
+                tasks.put("MouthRenderer(" + mouthShape + ", " + mouthFill + ")", () -> {
+                    MouthRenderer.clearCache();
+                    return new MouthRenderer(eyes);
+                });
+                tasks.put("MouthRenderer(" + mouthShape + ", " + mouthFill + ", cached)", () -> new MouthRenderer(eyes));
+            }
+        }
+
+        for (BodyShape bodyShape : BodyShape.values()) {
+            Monster m = createMonster(bodyShape, Hair.NONE, EyeNumber.ONE, EyePlacement.NORMAL, MouthShape.GRIN, MouthFill.BLACK, Horn.NORMAL, Legs.NONE);
+            BodyRenderer body = createBodyRenderer(m);
+            tasks.put("HornRenderer(" + bodyShape + ")", () -> {
+                HornRenderer.clearCache();
+                return new HornRenderer(body, m.horn, new Color(0xCF5C36));
+            });
+            tasks.put("HornRenderer(" + bodyShape + ", cached)", () -> new HornRenderer(body, m.horn, new Color(0xCF5C36)));
+        }
+
+        for (Legs legs : Legs.values()) {
+            if (legs == Legs.NONE)
+                continue;
+            Monster m = createMonster(BodyShape.TRAPEZOID, Hair.WOOLY, EyeNumber.ONE, EyePlacement.NORMAL, MouthShape.GRIN, MouthFill.BLACK, Horn.NONE, legs);
+            BodyRenderer body = createBodyRenderer(m);
+            tasks.put("LegsRenderer(" + legs + ")", () -> {
+                VectorImage img = new VectorImage();
+                LegsRenderer r = new LegsRenderer(body, m.legs);
+                r.paintUnderBody(img);
+                r.paintAboveBody(img);
+                return img;
+            });
+        }
+
+        List<Monster> monsters = new ArrayList<>();
+        List<Monster> untexturedMonsters = new ArrayList<>();
+        Random random = new Random(0);
+        while (untexturedMonsters.size() < 50) {
+            Monster m = new Monster(random);
+            if (monsters.size() < 50)
+                monsters.add(m);
+            if (!m.includeTexture)
+                untexturedMonsters.add(m);
+        }
+
+        int[] ctr = new int[1];
+        tasks.put("MonsterRenderer.getImage(random)", () -> {
+            MonsterRenderer.clearCaches();
+            return new MonsterRenderer(monsters.get(ctr[0]++ % monsters.size())).getImage();
+        });
+        tasks.put("MonsterRenderer.getImage(random, cached)", () ->
+                new MonsterRenderer(monsters.get(ctr[0]++ % monsters.size())).getImage());
+
+        List<VectorImage> images = new ArrayList<>();
+        for (Monster m : untexturedMonsters) {
+            images.add(new MonsterRenderer(m).getImage());
+        }
+        SVGWriter svgWriter = new SVGWriter();
+        tasks.put("SVGWriter.write(300)", () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            svgWriter.write(images.get(ctr[0]++ % images.size()), new Dimension(300, 300), out);
+            return out;
+        });
+
+        VectorImage texturedImage = new MonsterRenderer(createMonster(BodyShape.CIRCLE, Hair.SHAGGY, EyeNumber.THREE,
+                EyePlacement.ANTENNA, MouthShape.GRIN, MouthFill.ALL_TEETH, Horn.NORMAL, Legs.BUG)).getImage();
+        for (int size : new int[] {64, 256, 1000, 2000}) {
+            tasks.put("rasterize(" + size + ")", () -> rasterize(texturedImage, size));
+            AffineTransform tx = TransformUtils.createAffineTransform(texturedImage.getBounds(), new Rectangle(1, 1, size - 2, size - 2));
+            tasks.put("TiledRasterizer.rasterize(" + size + ")", () -> new TiledRasterizer().rasterize(texturedImage, tx, size, size));
+            BufferedImage bi = rasterize(texturedImage, size);
+            tasks.put("ImageIO.write(png, " + size + ")", () -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(bi, "png", out);
+                return out;
+            });
+            tasks.put("PNGEncoder.write(" + size + ")", () -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new PNGEncoder().write(bi, out);
+                return out;
+            });
+        }
+
+        return tasks;
+    }
+
+    private static Monster createMonster(BodyShape bodyShape, Hair hair, EyeNumber eyeNumber, EyePlacement eyePlacement,
+                                         MouthShape mouthShape, MouthFill mouthFill, Horn horn, Legs legs) {
+        return new Monster(bodyShape, Monster.TEAL, hair, true, eyeNumber, eyePlacement, Eyelid.SQUINT,
+                mouthShape, mouthFill, horn, legs);
+    }
+
+    private static BodyRenderer createBodyRenderer(Monster m) {
+        return new BodyRenderer(new Rectangle(0, 0, 100, 100), m.hair, m.bodyColor, m.bodyShape, m.includeTexture, m.getRandomSeed());
+    }
+
+    private static BufferedImage rasterize(VectorImage img, int size) {
+        BufferedImage bi = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        g.transform(TransformUtils.createAffineTransform(img.getBounds(), new Rectangle(1, 1, size - 2, size - 2)));
+        img.paint(g);
+        g.dispose();
+        return bi;
+    }
+
+    private final long warmUpMillis, measureMillis;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final DecimalFormat decimalFormat = new DecimalFormat("#,##0.0");
+
+    /**
+     * This is written to after every operation so the JIT can't prove the results are unused.
+     */
+    private int sink;
+
+    public RenderBenchmark(long warmUpMillis, long measureMillis) {
+        this.warmUpMillis = warmUpMillis;
+        this.measureMillis = measureMillis;
+
+        com.sun.management.ThreadMXBean bean = null;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean sunBean &&
+                sunBean.isThreadAllocatedMemorySupported()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+            bean = sunBean;
+        }
+        threadBean = bean;
+    }
+
+    private Result run(String name, Task task) throws Exception {
+        loop(task, warmUpMillis);
+
+        long threadId = Thread.currentThread().threadId();
+        long bytes = threadBean == null ? -1 : threadBean.getThreadAllocatedBytes(threadId);
+        long t = System.nanoTime();
+        long operations = loop(task, measureMillis);
+        t = System.nanoTime() - t;
+        if (threadBean != null)
+            bytes = threadBean.getThreadAllocatedBytes(threadId) - bytes;
+
+        return new Result(name, operations, ((double) t) / operations,
+                bytes < 0 ? Double.NaN : ((double) bytes) / operations);
+    }
+
+    private long loop(Task task, long millis) throws Exception {
+        long operations = 0;
+        long end = System.nanoTime() + millis * 1_000_000L;
+        do {
+            Object result = task.run();
+            sink += System.identityHashCode(result);
+            operations++;
+        } while (System.nanoTime() < end);
+        return operations;
+    }
+
+    private String format(Result result) {
+        String bytesStr = Double.isNaN(result.bytesPerOperation) ? "?" : decimalFormat.format(result.bytesPerOperation / 1024);
+        return String.format("%-50s %12d %14s %14s", result.name, result.operations,
+                decimalFormat.format(result.nanosPerOperation / 1000), bytesStr);
+    }
+}
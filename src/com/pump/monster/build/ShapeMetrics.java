@@ -0,0 +1,60 @@
+package com.pump.monster.build;
+
+import java.awt.*;
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+
+/**
+ * Measurements of shapes that our geometry checks use to compare new geometry against the
+ * {@link Area}-based geometry it replaced.
+ */
+class ShapeMetrics {
+
+    private static final double FLATNESS = .0001;
+
+    /**
+     * Return the area of a shape. The shape is first converted to an Area, so overlapping subpaths
+     * are only counted once.
+     */
+    static double getArea(Shape shape) {
+        Area area = shape instanceof Area a ? a : new Area(shape);
+
+        // an Area's holes are wound in the opposite direction of its outer edges, so the signed area of
+        // every subpath adds up to the right value
+        double sum = 0;
+        double moveX = 0, moveY = 0, lastX = 0, lastY = 0;
+        double[] coords = new double[6];
+        for (PathIterator iter = area.getPathIterator(null, FLATNESS); !iter.isDone(); iter.next()) {
+            int type = iter.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO) {
+                sum += lastX * moveY - moveX * lastY;
+                moveX = lastX = coords[0];
+                moveY = lastY = coords[1];
+            } else if (type == PathIterator.SEG_LINETO) {
+                sum += lastX * coords[1] - coords[0] * lastY;
+                lastX = coords[0];
+                lastY = coords[1];
+            }
+        }
+        sum += lastX * moveY - moveX * lastY;
+        return Math.abs(sum / 2);
+    }
+
+    /**
+     * Return the area of the symmetric difference of two shapes.
+     */
+    static double getSymmetricDifference(Shape shape1, Shape shape2) {
+        Area area = new Area(shape1);
+        area.exclusiveOr(new Area(shape2));
+        return getArea(area);
+    }
+
+    /**
+     * Return the area of the part of shape1 that is not inside shape2.
+     */
+    static double getDifference(Shape shape1, Shape shape2) {
+        Area area = new Area(shape1);
+        area.subtract(new Area(shape2));
+        return getArea(area);
+    }
+}
@@ -126,6 +126,173 @@ public class BodyRenderer {
         dest.append(path, false);
     }
 
+    /**
+     * Half the width of the highlights and shadows along each SHAGGY wedge.
+     */
+    private static final double SHAGGY_ACCENT_WIDTH = 1.5;
+
+    /**
+     * The number of line segments used to approximate the cubic edge of each SHAGGY wedge's highlight.
+     */
+    private static final int SHAGGY_ACCENT_SEGMENTS = 16;
+
+    /**
+     * The number of line segments used to approximate each quarter-circle cap of a SHAGGY wedge's accents.
+     */
+    private static final int SHAGGY_CAP_SEGMENTS = 4;
+
+    /**
+     * Create the highlight and shadow of a SHAGGY wedge. The wedge is bounded by a cubic (from the body
+     * to the wedge's tip), a line (from the tip back to the body), and the implied edge that closes it.
+     * <p>
+     * The highlight is the part of the wedge within {@code width} of the cubic, and the shadow is the
+     * part of the wedge within {@code width} of the line that isn't part of the highlight. Both are
+     * constructed directly from the curves as one-sided offsets with round caps. (Where the shadow
+     * meets the highlight, the highlight's edge is treated as a straight line.) This is
+     * indistinguishable from intersecting the wedge with stroked shapes at this scale.
+     *
+     * @return the highlight and the shadow.
+     */
+    public static Path2D[] createWedgeAccents(CubicCurve2D cubic, Line2D line, double width) {
+        double x0 = cubic.getX1();
+        double y0 = cubic.getY1();
+        double xTip = line.getX1();
+        double yTip = line.getY1();
+        double x2 = line.getX2();
+        double y2 = line.getY2();
+
+        // the orientation of the wedge tells us which side of each edge is inside the wedge
+        double orientation = Math.signum((xTip - x0) * (y2 - y0) - (yTip - y0) * (x2 - x0));
+        if (orientation == 0)
+            return new Path2D[] { new Path2D.Double(), new Path2D.Double() };
+
+        double[] lineNormal = getNormal(x2 - xTip, y2 - yTip, orientation);
+        double[] closingNormal = getNormal(x0 - x2, y0 - y2, orientation);
+
+        int n = SHAGGY_ACCENT_SEGMENTS;
+        int capSize = 2 * SHAGGY_CAP_SEGMENTS;
+
+        // the highlight is: the cubic, a round cap at the tip, the cubic offset toward the inside of
+        // the wedge (in reverse), and a round cap at the base
+        double[] highlight = new double[4 * n + 4 + 2 * capSize];
+        int offsetStart = 2 * (n + 1) + 2 + capSize;
+        double[] baseNormal = null;
+        double[] normal = null;
+        for (int i = 0; i <= n; i++) {
+            double t = ((double) i) / n;
+            double u = 1 - t;
+            double x = u * u * u * x0 + 3 * u * u * t * cubic.getCtrlX1() + 3 * u * t * t * cubic.getCtrlX2() + t * t * t * xTip;
+            double y = u * u * u * y0 + 3 * u * u * t * cubic.getCtrlY1() + 3 * u * t * t * cubic.getCtrlY2() + t * t * t * yTip;
+            double dx = 3 * u * u * (cubic.getCtrlX1() - x0) + 6 * u * t * (cubic.getCtrlX2() - cubic.getCtrlX1()) + 3 * t * t * (xTip - cubic.getCtrlX2());
+            double dy = 3 * u * u * (cubic.getCtrlY1() - y0) + 6 * u * t * (cubic.getCtrlY2() - cubic.getCtrlY1()) + 3 * t * t * (yTip - cubic.getCtrlY2());
+            if (Math.abs(dx) + Math.abs(dy) < .000001) {
+                dx = xTip - x0;
+                dy = yTip - y0;
+            }
+            normal = getNormal(dx, dy, orientation);
+            if (i == 0)
+                baseNormal = normal;
+
+            highlight[2 * i] = x;
+            highlight[2 * i + 1] = y;
+            if (i < n) {
+                // the offset of the last point is the end of the tip's cap
+                int j = offsetStart + 2 * (n - 1 - i);
+                highlight[j] = x + width * normal[0];
+                highlight[j + 1] = y + width * normal[1];
+            }
+        }
+
+        double[] tipForward = getNormal(normal[0], normal[1], -orientation);
+        highlight[2 * (n + 1)] = xTip + width * tipForward[0];
+        highlight[2 * (n + 1) + 1] = yTip + width * tipForward[1];
+        writeQuarterCircle(highlight, 2 * (n + 1) + 2, xTip, yTip, width, tipForward, normal);
+
+        double[] baseBackward = getNormal(baseNormal[0], baseNormal[1], orientation);
+        writeQuarterCircle(highlight, highlight.length - capSize, x0, y0, width, baseNormal, baseBackward);
+
+        highlight = GeometryUtils.clipToHalfPlane(highlight, xTip, yTip, lineNormal[0], lineNormal[1]);
+        highlight = GeometryUtils.clipToHalfPlane(highlight, x2, y2, closingNormal[0], closingNormal[1]);
+
+        // the shadow is the line offset toward the inside of the wedge, minus the highlight near the tip
+        double[] shadow = new double[8 + capSize];
+        double[] forward = getNormal(lineNormal[0], lineNormal[1], -orientation);
+        shadow[0] = xTip;
+        shadow[1] = yTip;
+        shadow[2] = x2;
+        shadow[3] = y2;
+        shadow[4] = x2 + width * forward[0];
+        shadow[5] = y2 + width * forward[1];
+        // add the round cap at the end of the line, from the forward tangent to the normal
+        writeQuarterCircle(shadow, 6, x2, y2, width, forward, lineNormal);
+        shadow[6 + capSize] = xTip + width * lineNormal[0];
+        shadow[7 + capSize] = yTip + width * lineNormal[1];
+        shadow = GeometryUtils.clipToHalfPlane(shadow, x2, y2, closingNormal[0], closingNormal[1]);
+        shadow = GeometryUtils.clipToHalfPlane(shadow, xTip + width * normal[0], yTip + width * normal[1], normal[0], normal[1]);
+
+        return new Path2D[] { GeometryUtils.toPath(highlight), GeometryUtils.toPath(shadow) };
+    }
+
+    /**
+     * Write the points of a quarter circle, excluding its first point.
+     *
+     * @param u the unit vector pointing from the center to the first point (which is not written).
+     * @param v the unit vector pointing from the center to the last point.
+     */
+    private static void writeQuarterCircle(double[] dest, int destIndex, double cx, double cy, double r, double[] u, double[] v) {
+        for (int k = 1; k <= SHAGGY_CAP_SEGMENTS; k++) {
+            double theta = Math.PI / 2 * k / SHAGGY_CAP_SEGMENTS;
+            double cos = Math.cos(theta);
+            double sin = Math.sin(theta);
+            dest[destIndex++] = cx + r * (cos * u[0] + sin * v[0]);
+            dest[destIndex++] = cy + r * (cos * u[1] + sin * v[1]);
+        }
+    }
+
+    /**
+     * Return the unit vector perpendicular to (dx, dy) that points toward the inside of a polygon.
+     *
+     * @param orientation the sign of the polygon's signed area.
+     */
+    private static double[] getNormal(double dx, double dy, double orientation) {
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0)
+            return new double[] {0, 0};
+        return new double[] {-dy * orientation / length, dx * orientation / length};
+    }
+
+    /**
+     * Return the part of an ellipse that is not covered by a translated copy of itself.
+     */
+    public static Path2D createCrescent(Rectangle2D ellipseBounds, double dx, double dy) {
+        double rx = ellipseBounds.getWidth() / 2;
+        double ry = ellipseBounds.getHeight() / 2;
+        Path2D returnValue = new Path2D.Double();
+        if (rx <= 0 || ry <= 0 || (dx == 0 && dy == 0))
+            return returnValue;
+
+        // work in a space where the ellipse is a unit circle centered at (0, 0) and the copy is centered at (ux, uy):
+        double ux = dx / rx;
+        double uy = dy / ry;
+        double d = Math.sqrt(ux * ux + uy * uy);
+        if (d >= 2) {
+            returnValue.append(new Ellipse2D.Double(ellipseBounds.getX(), ellipseBounds.getY(),
+                    ellipseBounds.getWidth(), ellipseBounds.getHeight()), false);
+            return returnValue;
+        }
+
+        // the circles intersect at angles (phi +/- gamma) on the first circle
+        double phi = Math.atan2(uy, ux);
+        double gamma = Math.acos(d / 2);
+        returnValue.moveTo(Math.cos(phi + gamma), Math.sin(phi + gamma));
+        GeometryUtils.appendArc(returnValue, 0, 0, 1, phi + gamma, 2 * Math.PI - 2 * gamma);
+        GeometryUtils.appendArc(returnValue, ux, uy, 1, phi + Math.PI + gamma, -2 * gamma);
+        returnValue.closePath();
+
+        returnValue.transform(new AffineTransform(rx, 0, 0, ry, ellipseBounds.getCenterX(), ellipseBounds.getCenterY()));
+        return returnValue;
+    }
+
     static class Body {
 
         /**
@@ -139,39 +306,85 @@ public class BodyRenderer {
          */
         final Path2D texturedShape;
 
+        /**
+         * A list of highlights/shadows to render above the textured shape. These must already
+         * be contained in the texturedShape.
+         */
+        final List<ShapeOperation> textureForegroundAccents = new LinkedList<>();
+
         /**
          * A list of highlights/shadows to render above the textured shape. These will be clipped
          * to the texturedShape when rendered, so you can add elements that overlap it.
          */
-        final List<ShapeOperation> textureForegroundAccents = new LinkedList<>();
+        final List<ShapeOperation> clippedTextureForegroundAccents = new LinkedList<>();
 
         /**
-         * A list of ShapeOperations to render under the textured shape
+         * A shape to render under the textured shape in a darker shade of the body color, or null.
          */
-        final List<ShapeOperation> background = new LinkedList<>();
+        Path2D backgroundShape;
 
         final BodyShape shapeType;
         final Hair hair;
-        final Color color;
         final int randomSeed;
-        final boolean includeTexture;
 
         List<Runnable> imagePrepCallbacks = new LinkedList<>();
-        transient VectorImage image;
-        transient Area shapeArea;
+        transient boolean accentsPrepared;
         transient float shaggyWedgeSize = 0;
         private AffineTransform tx;
 
+        private record Key(BodyShape shapeType, Hair hair, int randomSeed, Rectangle2D bounds) {}
+
+        private static final int MAX_CACHE_SIZE = 64;
+
+        private static final LinkedHashMap<Key, Body> cache = new LinkedHashMap<>(16, .75f, true);
+
         /**
+         * Return a cached Body, creating it if necessary.
+         * <p>
+         * A Body only describes geometry (and the color-independent accents), so the same Body is
+         * shared by every color and texture setting. See {@link #createImage(Color, boolean)}.
+         *
          * @param bounds the bounds this Body's plain (undecorated) shape will occupy. The textured
          *               shape may fall a few pixels outside of these bounds.
          */
-        public Body(Rectangle2D bounds, Hair hair, Color color, BodyShape shapeType, boolean includeTexture, int randomSeed) {
-            this.color = color;
+        static Body get(Rectangle2D bounds, Hair hair, BodyShape shapeType, int randomSeed) {
+            Key key = new Key(shapeType, hair, randomSeed, bounds.getBounds2D());
+            synchronized (cache) {
+                Body body = cache.get(key);
+                if (body != null)
+                    return body;
+            }
+
+            // build it outside of the lock; if two threads race the first one stored wins
+            Body body = new Body(key.bounds, hair, shapeType, randomSeed);
+
+            synchronized (cache) {
+                Body existing = cache.putIfAbsent(key, body);
+                if (existing != null)
+                    return existing;
+
+                Iterator<Key> iter = cache.keySet().iterator();
+                while (cache.size() > MAX_CACHE_SIZE) {
+                    iter.next();
+                    iter.remove();
+                }
+            }
+            return body;
+        }
+
+        /**
+         * Discard every cached Body.
+         */
+        static void clearCache() {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+
+        private Body(Rectangle2D bounds, Hair hair, BodyShape shapeType, int randomSeed) {
             this.hair = hair;
             this.randomSeed = randomSeed;
             this.shapeType = shapeType;
-            this.includeTexture = includeTexture;
             untexturedShape = createUntransformedShape(false);
 
             tx = TransformUtils.createAffineTransform(untexturedShape.getBounds2D(), bounds);
@@ -363,8 +576,6 @@ public class BodyRenderer {
             Graphics2DContext shadowContext = createContext(new Color(0,0,0,45));
             Graphics2DContext highlightContext = createContext(null);
 
-            Stroke stroke = new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
-
             // step 2: write the path
 
             for (float span : spans) {
@@ -415,12 +626,11 @@ public class BodyRenderer {
                             highlightContext.setColor(new Color(0,0,0, alpha));
                         }
 
-                        Shape highlightShape = Clipper.intersect(.01f, wedge, stroke.createStrokedShape(cubic));
-                        Area shadowShape = new Area( Clipper.intersect(.01f, wedge, stroke.createStrokedShape(line)) );
-                        shadowShape.subtract(new Area(highlightShape));
+                        Path2D[] accents = createWedgeAccents(cubic, line, SHAGGY_ACCENT_WIDTH);
 
-                        textureForegroundAccents.add(new FillOperation(highlightContext, highlightShape));
-                        textureForegroundAccents.add(new FillOperation(shadowContext, shadowShape));
+                        // these are inside the wedge, so they don't need to be clipped to the texturedShape
+                        textureForegroundAccents.add(new FillOperation(highlightContext, accents[0]));
+                        textureForegroundAccents.add(new FillOperation(shadowContext, accents[1]));
                     }
                 };
 
@@ -439,9 +649,13 @@ public class BodyRenderer {
             return returnValue;
         }
 
-        public synchronized VectorImage getImage() {
-            if (image != null)
-                return image;
+        /**
+         * Run the deferred imagePrepCallbacks and finish the accents. This only happens once, and
+         * the results are shared by every image this Body creates.
+         */
+        private synchronized void prepareAccents() {
+            if (accentsPrepared)
+                return;
 
             for (Runnable callback : imagePrepCallbacks) {
                 callback.run();
@@ -456,27 +670,34 @@ public class BodyRenderer {
             if (hair == Hair.NONE) {
                 createNoHairAccents();
             } else if (hair == Hair.WOOLY) {
-                Path2D backgroundShape = createWoolyEdge(untexturedShape, randomSeed + 1, 0);
+                backgroundShape = createWoolyEdge(untexturedShape, randomSeed + 1, 0);
                 backgroundShape.transform(AffineTransform.getTranslateInstance(.25, .25));
-
-                Color shadow = HSLColor.transform(color, 0, 1, .9f);
-                Graphics2DContext context = createContext(shadow);
-                background.add(new FillOperation(context, backgroundShape));
             }
 
-            // clip all accents to the textured shape:
-            for (ShapeOperation accent : textureForegroundAccents) {
+            // clip the remaining accents to the textured shape:
+            for (ShapeOperation accent : clippedTextureForegroundAccents) {
                 Shape clippedShape = Clipper.intersect(.01f, texturedShape, accent.getShape());
                 accent.setShape(clippedShape);
             }
 
-            image = new VectorImage();
+            accentsPrepared = true;
+        }
+
+        /**
+         * Create an image of this body. This is cheap once the accents have been prepared, so
+         * recoloring a body doesn't repeat any of its geometry.
+         */
+        public VectorImage createImage(Color color, boolean includeTexture) {
+            prepareAccents();
+
+            VectorImage image = new VectorImage();
             Graphics2D g = image.createGraphics();
             g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
 
-            for (Operation op : background) {
-                op.paint(g);
+            if (backgroundShape != null) {
+                g.setColor(HSLColor.transform(color, 0, 1, .9f));
+                g.fill(backgroundShape);
             }
 
             g.setColor(color);
@@ -486,6 +707,10 @@ public class BodyRenderer {
                 op.paint(g);
             }
 
+            for (Operation op : clippedTextureForegroundAccents) {
+                op.paint(g);
+            }
+
             if (includeTexture) {
                 getTexture(hair).paint(g, texturedShape, getTextureOpacity(hair), randomSeed);
             }
@@ -496,29 +721,24 @@ public class BodyRenderer {
         }
 
         private void createNoHairAccents() {
-            if (shapeArea == null)
-                shapeArea = new Area(texturedShape);
+            Graphics2DContext shadowContext = createContext(new Color(0,0,0,20));
+            Graphics2DContext highlightContext = createContext(new Color(255,255,255,50));
 
-            Shape highlight, shadow;
             if (shapeType == BodyShape.CIRCLE) {
-                Area shadowArea = new Area(shapeArea);
-                Area highlightArea = new Area(shapeArea);
+                // the texturedShape is an ellipse, so its shadow and highlight are crescents inside it:
+                Rectangle2D bounds = texturedShape.getBounds2D();
 
                 Random random = new Random(randomSeed);
                 double dx = 1 + 2 * random.nextDouble();
                 double dy = 1 + 1 * random.nextDouble();
-                shadowArea.transform(AffineTransform.getTranslateInstance(dx, dy));
-                shadowArea.subtract(shapeArea);
-                shadowArea.transform(AffineTransform.getTranslateInstance(-dx, -dy));
+                Shape shadow = createCrescent(bounds, -dx, -dy);
 
                 dx = 1 + 1.5 * random.nextDouble();
                 dy = 1 + 2 * random.nextDouble();
-                highlightArea.transform(AffineTransform.getTranslateInstance(-dx, -dy));
-                highlightArea.subtract(shapeArea);
-                highlightArea.transform(AffineTransform.getTranslateInstance(dx, dy));
+                Shape highlight = createCrescent(bounds, dx, dy);
 
-                highlight = highlightArea;
-                shadow = shadowArea;
+                textureForegroundAccents.add(new FillOperation(shadowContext, shadow));
+                textureForegroundAccents.add(new FillOperation(highlightContext, highlight));
             } else {
                 Quadrilateral q = getQuadrilateral();
 
@@ -534,7 +754,6 @@ public class BodyRenderer {
                 shadowPath.lineTo(q.topRight.getX() + 50, q.topRight.getY());
                 shadowPath.lineTo(q.bottomRight.getX() + 50, q.bottomRight.getY() + 50);
                 shadowPath.lineTo(q.bottomLeft.getX(), q.bottomLeft.getY() + 50);
-                shadow = shadowPath;
 
                 // paint upper-left highlight:
                 p1 = new Point2D.Double(q.bottomLeft.getX() + 2, q.bottomLeft.getY());
@@ -549,13 +768,10 @@ public class BodyRenderer {
                 highlightPath.lineTo(q.topRight.getX(), q.topRight.getY() - 50);
                 highlightPath.lineTo(q.topLeft.getX() - 50, q.topLeft.getY() - 50);
                 highlightPath.lineTo(q.bottomLeft.getX() - 50, q.bottomLeft.getY() + 50);
-                highlight = highlightPath;
-            }
-            Graphics2DContext shadowContext = createContext(new Color(0,0,0,20));
-            textureForegroundAccents.add(new FillOperation(shadowContext, shadow));
 
-            Graphics2DContext highlightContext = createContext(new Color(255,255,255,50));
-            textureForegroundAccents.add(new FillOperation(highlightContext, highlight));
+                clippedTextureForegroundAccents.add(new FillOperation(shadowContext, shadowPath));
+                clippedTextureForegroundAccents.add(new FillOperation(highlightContext, highlightPath));
+            }
         }
 
         /**
@@ -634,6 +850,15 @@ public class BodyRenderer {
     VectorImage bodyImage;
     boolean includeTexture;
 
+    /**
+     * Discard every cached Body (including the bodies of antenna tips), so each is built again the
+     * next time it's used. This is for benchmarks that measure how long it takes to build a body.
+     */
+    public static void clearCache() {
+        Body.clearCache();
+        MiniBody.clearCache();
+    }
+
     public BodyRenderer(Rectangle2D bounds, Hair hair, Color color, BodyShape shapeType, boolean includeTexture, int randomSeed) {
         this.hair = hair;
         this.color = includeTexture ? HSLColor.transform(color, 0, 1.1f, 1.03f) : color;
@@ -653,12 +878,12 @@ public class BodyRenderer {
 
     public synchronized VectorImage getBodyImage() {
         if (bodyImage == null)
-            bodyImage = body.getImage();
+            bodyImage = body.createImage(color, includeTexture);
         return bodyImage;
     }
 
 
     public Body createBody(Rectangle2D bounds) {
-        return new Body(bounds, hair, color, shapeType, includeTexture, randomSeed);
+        return Body.get(bounds, hair, shapeType, randomSeed);
     }
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package com.pump.monster.render;
 
-import com.pump.graphics.Graphics2DContext;
-import com.pump.graphics.vector.Operation;
 import com.pump.graphics.vector.VectorImage;
 import com.pump.monster.*;
 
@@ -35,18 +33,10 @@ public class EyesRenderer {
 
                 Ellipse2D antennaTip = getShape(5);
 
-                // use a BodyRenderer to paint the antenna circle in the same style as the monster itself
-                // (shaggy, wooly, etc.)
-                int randomSeed = monster.hashCode() + (int)(x * 10  + y * 100 + radius);
-                AffineTransform tx = AffineTransform.getScaleInstance(2,2);
-                BodyRenderer r = new BodyRenderer( tx.createTransformedShape(antennaTip.getBounds2D()).getBounds2D(), monster.hair,
-                        monster.bodyColor, BodyShape.CIRCLE, monster.includeTexture, randomSeed);
-                for (Operation op : r.getBodyImage().getOperations()) {
-                    Graphics2DContext context = op.getContext();
-                    context.scale(.5, .5);
-                    op.setContext(context);
-                }
-                r.bodyImage.paint(g);
+                // paint the antenna circle in the same style as the monster itself (shaggy, wooly, etc.)
+                int randomSeed = monster.getRandomSeed() + (int)(x * 10  + y * 100 + radius);
+                MiniBody.get(monster.hair, monster.bodyColor, monster.includeTexture, randomSeed)
+                        .paint(g, antennaTip.getBounds2D());
             }
 
             Shape eyeSocket = getShape(3);
@@ -73,7 +63,7 @@ public class EyesRenderer {
             g.setColor(Color.white);
             g.fill(white);
 
-            float pupilDX = new Random(monster.hashCode()).nextFloat() * 4 - 2;
+            float pupilDX = new Random(monster.getRandomSeed()).nextFloat() * 4 - 2;
             float pupilRadius = radius / 2;
 
             // the white speck in the corner of the pupil
@@ -153,7 +143,7 @@ public class EyesRenderer {
         this.body = body;
         this.monster = monster;
 
-        Random r = new Random(monster.hashCode());
+        Random r = new Random(monster.getRandomSeed());
 
         if (monster.eyePlacement == EyePlacement.NORMAL) {
             int dy = -15;
@@ -192,63 +182,169 @@ public class EyesRenderer {
         // wiggle the eyes a little so most variations aren't identical:
 
         Collections.shuffle(eyes, r);
+        nudgeEyes(r);
 
-        for (int eyeIndex = 0; eyeIndex < eyes.size(); eyeIndex++) {
-            Eye eye = eyes.get(eyeIndex);
-            Shape shape = eye.getShape(1);
-            nudgeEye : while (true) {
-                double dx = r.nextInt(8) - 4;
-                double dy = r.nextInt(8) - 4;
-                AffineTransform tx = AffineTransform.getTranslateInstance(dx, dy);
-                for (int otherIndex = 0; otherIndex < eyes.size(); otherIndex++) {
-                    if (otherIndex == eyeIndex)
-                        continue;
-                    Eye otherEye = eyes.get(otherIndex);
-                    if (intersects(otherEye.getShape(1), tx.createTransformedShape(shape))) {
-                        continue nudgeEye;
-                    }
-                }
-
-                eye.x += dx;
-                eye.y += dy;
-                break nudgeEye;
-            }
+        // maybe scale them a little smaller so they don't bump into the body's edge:
+        if (monster.eyePlacement == EyePlacement.NORMAL) {
+            shrinkEyesToFit(body.getBody().getShape(false));
         }
+    }
 
-        // maybe scale them a little smaller so they don't bump into the body's edge:
-        Shape bodyShape = body.getBody().getShape(false);
+    /**
+     * The maximum number of random offsets we try for each eye. If none of them keep the eye
+     * clear of the other eyes we use the offset that came closest.
+     */
+    private static final int MAX_NUDGE_ATTEMPTS = 20;
 
-        if (monster.eyePlacement == EyePlacement.NORMAL) {
+    /**
+     * Each step of {@link #shrinkEyesToFit(Shape)} scales the eyes by this factor (and moves them down 1 unit).
+     */
+    private static final double SHRINK_FACTOR = .95;
+
+    private static final int MAX_SHRINK_STEPS = 100;
 
-            Rectangle2D eyeBounds = eyes.get(0).getShape(0).getBounds2D();
-            for (int a = 1; a < eyes.size(); a++) {
-                eyeBounds.add(eyes.get(a).getShape(0).getBounds2D());
+    /**
+     * Move each eye by a small random offset that doesn't make it overlap any other eye.
+     */
+    private void nudgeEyes(Random r) {
+        for (Eye eye : eyes) {
+            int bestDX = 0;
+            int bestDY = 0;
+            double bestClearance = getClearance(eye, 0, 0);
+            for (int attempt = 0; attempt < MAX_NUDGE_ATTEMPTS; attempt++) {
+                int dx = r.nextInt(8) - 4;
+                int dy = r.nextInt(8) - 4;
+                double clearance = getClearance(eye, dx, dy);
+                if (clearance >= 0 || clearance > bestClearance) {
+                    bestDX = dx;
+                    bestDY = dy;
+                    bestClearance = clearance;
+                    if (clearance >= 0)
+                        break;
+                }
             }
-            double centerX = eyeBounds.getCenterX();
-            double centerY = eyeBounds.getCenterY();
+            eye.x += bestDX;
+            eye.y += bestDY;
+        }
+    }
 
-            while (true) {
-                boolean needsResize = false;
+    /**
+     * Return the distance between an eye (if it were moved by (dx, dy)) and the closest other eye.
+     * Each eye is padded by 1 unit, so this is negative if they overlap.
+     */
+    private double getClearance(Eye eye, double dx, double dy) {
+        double returnValue = Double.MAX_VALUE;
+        for (Eye other : eyes) {
+            if (other == eye)
+                continue;
+            double distance = Point2D.distance(eye.x + dx, eye.y + dy, other.x, other.y);
+            returnValue = Math.min(returnValue, distance - (eye.radius + 1) - (other.radius + 1));
+        }
+        return returnValue;
+    }
 
-                for (int a = 0; a < eyes.size(); a++) {
-                    if (!bodyShape.contains(eyes.get(a).getShape(2).getBounds2D())) {
-                        needsResize = true;
-                    }
-                }
+    /**
+     * Shrink the eyes (and move them down) until they all fit inside the body.
+     * <p>
+     * After n steps a point p moves to {@code center + s * (p - center) + (0, (1 - s) / (1 - SHRINK_FACTOR))},
+     * where {@code s = SHRINK_FACTOR^n}. So every corner of every eye's bounds is a linear function of s, and
+     * since the body is convex each edge of the body gives us a lower or upper bound for s. This lets us
+     * compute the number of steps directly instead of shrinking the eyes one step at a time.
+     */
+    private void shrinkEyesToFit(Shape bodyShape) {
+        Rectangle2D eyeBounds = eyes.get(0).getShape(0).getBounds2D();
+        for (int a = 1; a < eyes.size(); a++) {
+            eyeBounds.add(eyes.get(a).getShape(0).getBounds2D());
+        }
+        double centerX = eyeBounds.getCenterX();
+        double centerY = eyeBounds.getCenterY();
 
-                if (!needsResize) {
-                    break;
-                }
+        int steps = getShrinkSteps(bodyShape, centerX, centerY);
 
-                for (Eye eye : eyes) {
-                    // squish inward (to avoid horizontal overlap with body left/right)
-                    eye.scale(.95, centerX, centerY);
+        // the polygon we used is a little smaller than the actual body, so we might be able to use fewer steps:
+        while (steps > 0 && fits(bodyShape, steps - 1, centerX, centerY)) {
+            steps--;
+        }
+        // ... or, if the body wasn't convex, we may need more steps:
+        while (steps < MAX_SHRINK_STEPS && !fits(bodyShape, steps, centerX, centerY)) {
+            steps++;
+        }
+
+        if (steps > 0) {
+            double s = Math.pow(SHRINK_FACTOR, steps);
+            for (Eye eye : eyes) {
+                // squish inward (to avoid horizontal overlap with body left/right)
+                eye.scale(s, centerX, centerY);
+
+                // push down (to avoid overlap with top of body)
+                eye.y += (float) ((1 - s) / (1 - SHRINK_FACTOR));
+            }
+        }
+    }
 
-                    // push down (to avoid overlap with top of body)
-                    eye.y += 1;
+    /**
+     * Return the smallest number of steps that fits every eye inside a polygon approximating the body,
+     * assuming the body is convex.
+     */
+    private int getShrinkSteps(Shape bodyShape, double centerX, double centerY) {
+        double[] polygon = GeometryUtils.toPolygon(bodyShape, .01);
+        int size = polygon.length;
+
+        double orientation = Math.signum(GeometryUtils.getSignedArea(polygon));
+        if (orientation == 0)
+            return 0;
+
+        double k = 1 / (1 - SHRINK_FACTOR);
+        double minS = 0;
+        double maxS = 1;
+        for (Eye eye : eyes) {
+            for (int corner = 0; corner < 4; corner++) {
+                double signX = corner % 2 == 0 ? -1 : 1;
+                double signY = corner < 2 ? -1 : 1;
+                // this corner is at (ax + bx * s, ay + by * s)
+                double ax = centerX + signX * 2;
+                double ay = centerY + k + signY * 2;
+                double bx = eye.x - centerX + signX * eye.radius;
+                double by = eye.y - centerY - k + signY * eye.radius;
+
+                for (int i = 0; i < size; i += 2) {
+                    int j = (i + 2) % size;
+                    double nx = -(polygon[j + 1] - polygon[i + 1]) * orientation;
+                    double ny = (polygon[j] - polygon[i]) * orientation;
+                    // the corner is inside this edge if c0 + c1 * s >= 0
+                    double c0 = (ax - polygon[i]) * nx + (ay - polygon[i + 1]) * ny;
+                    double c1 = bx * nx + by * ny;
+                    if (c1 > 0) {
+                        minS = Math.max(minS, -c0 / c1);
+                    } else if (c1 < 0) {
+                        maxS = Math.min(maxS, c0 / -c1);
+                    } else if (c0 < 0) {
+                        return 0;
+                    }
                 }
             }
         }
+
+        if (maxS <= 0 || minS > maxS)
+            return 0;
+        int steps = (int) Math.ceil(Math.log(maxS) / Math.log(SHRINK_FACTOR) - .000001);
+        return Math.max(0, Math.min(MAX_SHRINK_STEPS, steps));
+    }
+
+    /**
+     * Return true if every eye fits inside the body after the given number of shrink steps.
+     */
+    private boolean fits(Shape bodyShape, int steps, double centerX, double centerY) {
+        double s = Math.pow(SHRINK_FACTOR, steps);
+        double dy = (1 - s) / (1 - SHRINK_FACTOR);
+        for (Eye eye : eyes) {
+            double x = centerX + s * (eye.x - centerX);
+            double y = centerY + s * (eye.y - centerY) + dy;
+            double r = s * eye.radius + 2;
+            if (!bodyShape.contains(x - r, y - r, 2 * r, 2 * r))
+                return false;
+        }
+        return true;
     }
 
     public void paint(VectorImage img) {
@@ -256,7 +352,7 @@ public class EyesRenderer {
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
 
-        Random r = new Random(monster.hashCode());
+        Random r = new Random(monster.getRandomSeed());
 
         for (Eye eye : eyes) {
             eye.radius -= r.nextInt(2);
@@ -270,62 +366,4 @@ public class EyesRenderer {
         }
         g.dispose();
     }
-
-    private boolean intersects(Shape shape1, Shape shape2) {
-        LineIterator iter1 = new LineIterator(shape1);
-        LineIterator iter2 = new LineIterator(shape2);
-
-        for (Line2D line1 = iter1.next(); line1 != null; line1 = iter1.next()) {
-            if(shape2.contains(line1.getX1(), line1.getY1()) || shape2.contains(line1.getX2(), line1.getY2()))
-                return true;
-            for (Line2D line2 = iter2.next(); line2 != null; line2 = iter2.next()) {
-                if(shape1.contains(line2.getX1(), line2.getY1()) || shape1.contains(line2.getX2(), line2.getY2()))
-                    return true;
-            }
-        }
-
-        return false;
-    }
-
-    static class LineIterator {
-        PathIterator pathIter;
-        float[] coords = new float[6];
-        float moveX, moveY, lastX, lastY;
-        Line2D line = new Line2D.Float();
-
-        public LineIterator(Shape shape) {
-            pathIter = shape.getPathIterator(null, .01);
-        }
-
-        public Line2D next() {
-            if (pathIter.isDone())
-                return null;
-
-            int k = pathIter.currentSegment(coords);
-            if (!pathIter.isDone())
-                pathIter.next();
-
-            if (k == PathIterator.SEG_MOVETO) {
-                moveX = coords[0];
-                moveY = coords[1];
-                lastX = moveX;
-                lastY = moveY;
-                return next();
-            }
-
-            if (k == PathIterator.SEG_LINETO) {
-                line.setLine(lastX, lastY, coords[0], coords[1]);
-                lastX = coords[0];
-                lastY = coords[1];
-                return line;
-            }
-
-            if (k == PathIterator.SEG_CLOSE) {
-                line.setLine(lastX, lastY, moveX, moveY);
-                return line;
-            }
-
-            throw new IllegalStateException("segment = " + k);
-        }
-    }
 }
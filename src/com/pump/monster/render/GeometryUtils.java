@@ -0,0 +1,181 @@
+package com.pump.monster.render;
+
+import java.awt.Shape;
+import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static geometry helpers the renderers use instead of general-purpose boolean operations
+ * (like {@link java.awt.geom.Area} or {@link com.pump.geom.Clipper}) when the shapes involved
+ * are simple enough to handle directly.
+ * <p>
+ * Polygons are represented as arrays of alternating x and y coordinates.
+ */
+class GeometryUtils {
+
+    /**
+     * Clip a polygon to a half-plane.
+     *
+     * @param xy the polygon's coordinates.
+     * @param px the x-coordinate of a point on the boundary of the half-plane.
+     * @param py the y-coordinate of a point on the boundary of the half-plane.
+     * @param nx the x-component of the normal pointing into the half-plane.
+     * @param ny the y-component of the normal pointing into the half-plane.
+     * @return the coordinates of the clipped polygon, which may be empty.
+     */
+    static double[] clipToHalfPlane(double[] xy, double px, double py, double nx, double ny) {
+        int n = xy.length / 2;
+        if (n == 0)
+            return xy;
+
+        double[] returnValue = new double[xy.length + 4];
+        int size = 0;
+
+        double prevX = xy[xy.length - 2];
+        double prevY = xy[xy.length - 1];
+        double prevDistance = (prevX - px) * nx + (prevY - py) * ny;
+        for (int a = 0; a < n; a++) {
+            double x = xy[2 * a];
+            double y = xy[2 * a + 1];
+            double distance = (x - px) * nx + (y - py) * ny;
+            if ((distance >= 0) != (prevDistance >= 0)) {
+                double f = prevDistance / (prevDistance - distance);
+                if (size + 2 > returnValue.length)
+                    returnValue = Arrays.copyOf(returnValue, returnValue.length * 2);
+                returnValue[size++] = prevX + f * (x - prevX);
+                returnValue[size++] = prevY + f * (y - prevY);
+            }
+            if (distance >= 0) {
+                if (size + 2 > returnValue.length)
+                    returnValue = Arrays.copyOf(returnValue, returnValue.length * 2);
+                returnValue[size++] = x;
+                returnValue[size++] = y;
+            }
+            prevX = x;
+            prevY = y;
+            prevDistance = distance;
+        }
+        return Arrays.copyOf(returnValue, size);
+    }
+
+    /**
+     * Clip a polygon to a convex polygon.
+     *
+     * @param xy the polygon to clip. This does not need to be convex.
+     * @param convex a convex polygon, in either orientation. If this has no area the result is empty.
+     * @return the coordinates of the clipped polygon, which may be empty.
+     */
+    static double[] clipToConvexPolygon(double[] xy, double[] convex) {
+        double orientation = Math.signum(getSignedArea(convex));
+        if (orientation == 0)
+            return new double[0];
+        for (int a = 0; a < convex.length && xy.length > 0; a += 2) {
+            int b = (a + 2) % convex.length;
+            double nx = -(convex[b + 1] - convex[a + 1]) * orientation;
+            double ny = (convex[b] - convex[a]) * orientation;
+            xy = clipToHalfPlane(xy, convex[a], convex[a + 1], nx, ny);
+        }
+        return xy;
+    }
+
+    /**
+     * Return twice the signed area of a polygon. This is positive if the polygon turns from the positive
+     * x-axis toward the positive y-axis.
+     */
+    static double getSignedArea(double[] xy) {
+        double sum = 0;
+        for (int a = 0; a < xy.length; a += 2) {
+            int b = (a + 2) % xy.length;
+            sum += xy[a] * xy[b + 1] - xy[b] * xy[a + 1];
+        }
+        return sum;
+    }
+
+    /**
+     * Flatten every subpath of a shape into a polygon.
+     */
+    static List<double[]> toPolygons(Shape shape, double flatness) {
+        List<double[]> returnValue = new ArrayList<>();
+        double[] polygon = new double[64];
+        int size = 0;
+        double[] coords = new double[6];
+        for (PathIterator iter = shape.getPathIterator(null, flatness); !iter.isDone(); iter.next()) {
+            int k = iter.currentSegment(coords);
+            if (k == PathIterator.SEG_MOVETO && size > 0) {
+                returnValue.add(Arrays.copyOf(polygon, size));
+                size = 0;
+            }
+            if (k == PathIterator.SEG_MOVETO || k == PathIterator.SEG_LINETO) {
+                if (size + 2 > polygon.length)
+                    polygon = Arrays.copyOf(polygon, polygon.length * 2);
+                polygon[size++] = coords[0];
+                polygon[size++] = coords[1];
+            }
+        }
+        if (size > 0)
+            returnValue.add(Arrays.copyOf(polygon, size));
+        return returnValue;
+    }
+
+    /**
+     * Flatten the first subpath of a shape into a polygon.
+     */
+    static double[] toPolygon(Shape shape, double flatness) {
+        double[] returnValue = new double[64];
+        int size = 0;
+        double[] coords = new double[6];
+        for (PathIterator iter = shape.getPathIterator(null, flatness); !iter.isDone(); iter.next()) {
+            int k = iter.currentSegment(coords);
+            if (k == PathIterator.SEG_MOVETO && size > 0)
+                break;
+            if (k == PathIterator.SEG_MOVETO || k == PathIterator.SEG_LINETO) {
+                if (size + 2 > returnValue.length)
+                    returnValue = Arrays.copyOf(returnValue, returnValue.length * 2);
+                returnValue[size++] = coords[0];
+                returnValue[size++] = coords[1];
+            }
+        }
+        return Arrays.copyOf(returnValue, size);
+    }
+
+    /**
+     * Create a closed path from a polygon. If the polygon has fewer than 3 vertices this returns an empty path.
+     */
+    static Path2D toPath(double[] xy) {
+        Path2D returnValue = new Path2D.Double(Path2D.WIND_NON_ZERO, xy.length / 2 + 1);
+        if (xy.length < 6)
+            return returnValue;
+        returnValue.moveTo(xy[0], xy[1]);
+        for (int a = 2; a < xy.length; a += 2) {
+            returnValue.lineTo(xy[a], xy[a + 1]);
+        }
+        returnValue.closePath();
+        return returnValue;
+    }
+
+    /**
+     * Append a circular arc to a path using one cubic curve per quarter-turn. This does not
+     * add a moveTo or lineTo to the start of the arc: the path's current point should already be there.
+     *
+     * @param startAngle the angle (in radians) of the first point, where the point at angle t is (cx + r * cos(t), cy + r * sin(t))
+     * @param extent the angle (in radians) to travel. This may be negative.
+     */
+    static void appendArc(Path2D path, double cx, double cy, double r, double startAngle, double extent) {
+        int segments = Math.max(1, (int) Math.ceil(Math.abs(extent) / (Math.PI / 2) - .000001));
+        double step = extent / segments;
+        double k = 4.0 / 3.0 * Math.tan(step / 4);
+        double angle = startAngle;
+        for (int a = 0; a < segments; a++) {
+            double cos0 = Math.cos(angle);
+            double sin0 = Math.sin(angle);
+            double cos1 = Math.cos(angle + step);
+            double sin1 = Math.sin(angle + step);
+            path.curveTo(cx + r * (cos0 - k * sin0), cy + r * (sin0 + k * cos0),
+                    cx + r * (cos1 + k * sin1), cy + r * (sin1 - k * cos1),
+                    cx + r * cos1, cy + r * sin1);
+            angle += step;
+        }
+    }
+}
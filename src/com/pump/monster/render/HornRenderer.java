@@ -1,7 +1,6 @@
 package com.pump.monster.render;
 
 import com.pump.awt.HSLColor;
-import com.pump.geom.Clipper;
 import com.pump.geom.MeasuredShape;
 import com.pump.graphics.vector.VectorImage;
 import com.pump.monster.BodyTexture;
@@ -9,8 +8,129 @@ import com.pump.monster.Horn;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 public class HornRenderer {
+
+    /**
+     * The stripes and shading of a horn, before it is rotated into place. Every horn has the same
+     * shape, so we build this once per color and paint it with a different transform for each horn.
+     */
+    private static class Template {
+        final VectorImage image = new VectorImage();
+
+        /**
+         * The outline of the horn.
+         */
+        final Shape shape;
+
+        Template(Color color) {
+            AffineTransform tx = AffineTransform.getScaleInstance(1.5, 1.5);
+
+            CubicCurve2D curve = new CubicCurve2D.Double(0, 0, -10, -5, -5, -18, 0, -20);
+
+            Path2D horn = new Path2D.Double();
+            horn.moveTo(-5,5);
+            horn.curveTo(-10, -5, -10, -15, curve.getX2(), curve.getY2());
+            horn.curveTo(-5, -15, -5, -5, 5, -5);
+            horn.closePath();
+
+            Path2D hornHalf = new Path2D.Double();
+            hornHalf.moveTo(-5,5);
+            hornHalf.curveTo(-10, -5, -10, -15, curve.getX2(), curve.getY2());
+            hornHalf.curveTo(curve.getCtrlX2(), curve.getCtrlY2(), curve.getCtrlX1(), curve.getCtrlY1(), curve.getX1(), curve.getY1());
+            hornHalf.closePath();
+
+            transform(curve, tx);
+            horn.transform(tx);
+            hornHalf.transform(tx);
+
+            Color[] colors = new Color[] { color, HSLColor.transform(color, 0, 1.1f, 1.2f)};
+
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+            // Each stripe is the horn clipped to a 10-unit wide band across the curve. (This used to be a
+            // 10-pixel stroke clipped to the horn.) Stripes are 4 units apart, so each stripe is painted over
+            // part of the previous stripe. Clipping stripes so they only touch would leave antialiased seams.
+            double[] hornPolygon = GeometryUtils.toPolygon(horn, .01);
+            MeasuredShape ms = new MeasuredShape(curve);
+            float length = ms.getOriginalDistance();
+            Point2D center = new Point2D.Double();
+            int colorCtr = 0;
+            for (float d = 0; d < length; d += 4) {
+                ms.getPoint(d, center);
+                double theta = ms.getTangentSlope(d);
+                double tx1 = Math.cos(theta);
+                double ty1 = Math.sin(theta);
+                double[] stripe = hornPolygon;
+                stripe = GeometryUtils.clipToHalfPlane(stripe, center.getX() - 5 * tx1, center.getY() - 5 * ty1, tx1, ty1);
+                stripe = GeometryUtils.clipToHalfPlane(stripe, center.getX() + 5 * tx1, center.getY() + 5 * ty1, -tx1, -ty1);
+                stripe = GeometryUtils.clipToHalfPlane(stripe, center.getX() + 15 * ty1, center.getY() - 15 * tx1, -ty1, tx1);
+                stripe = GeometryUtils.clipToHalfPlane(stripe, center.getX() - 15 * ty1, center.getY() + 15 * tx1, ty1, -tx1);
+
+                if (stripe.length >= 6) {
+                    g.setColor(colors[colorCtr]);
+                    g.fill(GeometryUtils.toPath(stripe));
+                }
+
+                colorCtr = (colorCtr + 1) % colors.length;
+            }
+
+            g.setPaint(new GradientPaint( (float) curve.getX1(), (float) curve.getY1(), new Color(0,0,0,40),
+                    (float) curve.getX2(), (float) curve.getY2(), new Color(0,0,0,0)
+                    ));
+            g.fill(horn);
+            g.setPaint(new GradientPaint( (float) curve.getX1(), (float) curve.getY1(), new Color(0,0,0,20),
+                    (float) curve.getX2(), (float) curve.getY2(), new Color(0,0,0,0)
+            ));
+            g.fill(hornHalf);
+
+            g.dispose();
+
+            shape = horn;
+        }
+    }
+
+    private static final int MAX_TEMPLATE_COUNT = 16;
+
+    private static final LinkedHashMap<Color, Template> templates = new LinkedHashMap<>(16, .75f, true);
+
+    private static Template getTemplate(Color color) {
+        synchronized (templates) {
+            Template template = templates.get(color);
+            if (template != null)
+                return template;
+        }
+
+        // build it outside of the lock; if two threads race the first one stored wins
+        Template template = new Template(color);
+
+        synchronized (templates) {
+            Template existing = templates.putIfAbsent(color, template);
+            if (existing != null)
+                return existing;
+
+            Iterator<Color> iter = templates.keySet().iterator();
+            while (templates.size() > MAX_TEMPLATE_COUNT) {
+                iter.next();
+                iter.remove();
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Discard every cached horn template, so each is created again the next time it's used. This is
+     * for benchmarks that measure how long it takes to create a horn.
+     */
+    public static void clearCache() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
     VectorImage img = new VectorImage();
 
     public HornRenderer(BodyRenderer bodyRenderer, Horn horn, Color color) {
@@ -21,35 +141,12 @@ public class HornRenderer {
 
         double theta = Math.atan2(p[1].getY() - p[0].getY(), p[1].getX() - p[0].getX());
 
-        paintHorn(color, p[0], theta, false, bodyRenderer.randomSeed, bodyRenderer.includeTexture);
-        paintHorn(color, p[1], theta, true, bodyRenderer.randomSeed, bodyRenderer.includeTexture);
+        Template template = getTemplate(color);
+        paintHorn(template, p[0], theta, false, bodyRenderer.randomSeed, bodyRenderer.includeTexture);
+        paintHorn(template, p[1], theta, true, bodyRenderer.randomSeed, bodyRenderer.includeTexture);
     }
 
-    private void paintHorn(Color color, Point2D base, double theta, boolean flipHorizontal, int randomSeed, boolean includeTexture) {
-
-        double x0 = 0;
-        double y0 = 0;
-        double ctrlx1 = -10;
-        double ctrly1 = -5;
-        double ctrlx2 = -5;
-        double ctrly2 = -18;
-        double x2 = 0;
-        double y2 = -20;
-
-        CubicCurve2D curve = new CubicCurve2D.Double(x0, y0, ctrlx1, ctrly1, ctrlx2, ctrly2, x2, y2);
-
-        Path2D horn = new Path2D.Double();
-        horn.moveTo(-5,5);
-        horn.curveTo(-10, -5, -10, -15, x2, y2);
-        horn.curveTo(-5, -15, -5, -5, 5, -5);
-        horn.closePath();
-
-        Path2D hornHalf = new Path2D.Double();
-        hornHalf.moveTo(-5,5);
-        hornHalf.curveTo(-10, -5, -10, -15, x2, y2);
-        hornHalf.curveTo(curve.getCtrlX2(), curve.getCtrlY2(), curve.getCtrlX1(), curve.getCtrlY1(), curve.getX1(), curve.getY1());
-        hornHalf.closePath();
-
+    private void paintHorn(Template template, Point2D base, double theta, boolean flipHorizontal, int randomSeed, boolean includeTexture) {
         AffineTransform tx = new AffineTransform();
         if (flipHorizontal) {
             tx.rotate(-theta + .5, base.getX(), base.getY());
@@ -61,42 +158,19 @@ public class HornRenderer {
         if (flipHorizontal) {
             tx.scale(-1, 1);
         }
-        tx.scale(1.5, 1.5);
-
-        transform(curve, tx);
-        horn.transform(tx);
-        hornHalf.transform(tx);
-
-        Color[] colors = new Color[] { color, HSLColor.transform(color, 0, 1.1f, 1.2f)};
 
         Graphics2D g = img.createGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        MeasuredShape ms = new MeasuredShape(curve);
-        int colorCtr = 0;
-        Stroke stroke = new BasicStroke(10);
-        for (float d = 0; d < ms.getOriginalDistance(); d += 4) {
-            double theta1 = ms.getTangentSlope(d);
-            g.setColor(colors[colorCtr]);
-
-            Line2D line = new Line2D.Double(
-                    ms.getPoint(d, null).getX() + 10 * Math.cos(theta1 + Math.PI / 2), ms.getPoint(d, null).getY() + 10 * Math.sin(theta1 + Math.PI / 2),
-                    ms.getPoint(d, null).getX() + 10 * Math.cos(theta1 - Math.PI / 2), ms.getPoint(d, null).getY() + 10 * Math.sin(theta1 - Math.PI / 2) );
-            g.fill( Clipper.intersect(.01f, horn, stroke.createStrokedShape(line)));
-
-            colorCtr = (colorCtr + 1) % colors.length;
-        }
 
-        g.setPaint(new GradientPaint( (float) base.getX(), (float) base.getY(), new Color(0,0,0,40),
-                (float) curve.getX2(), (float) curve.getY2(), new Color(0,0,0,0)
-                ));
-        g.fill(horn);
-        g.setPaint(new GradientPaint( (float) base.getX(), (float) base.getY(), new Color(0,0,0,20),
-                (float) curve.getX2(), (float) curve.getY2(), new Color(0,0,0,0)
-        ));
-        g.fill(hornHalf);
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.transform(tx);
+        template.image.paint(g2);
+        g2.dispose();
 
+        // the texture isn't part of the template, because it depends on the random seed and
+        // shouldn't rotate with the horn
         if (includeTexture)
-            BodyTexture.CONCRETE.paint(g, horn, 60, randomSeed);
+            BodyTexture.CONCRETE.paint(g, tx.createTransformedShape(template.shape), 60, randomSeed);
 
         g.dispose();
     }
@@ -0,0 +1,90 @@
+package com.pump.monster.render;
+
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.Monster;
+
+import java.awt.*;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This renders a series of monsters, and only rebuilds the parts (layers) of each monster that changed
+ * since the previous monster. This is intended for editors, where each new monster usually differs
+ * from the previous one by a single attribute.
+ * <p>
+ * Each layer is identified by a key that lists every Monster attribute that layer reads, including
+ * the attributes it reads through the layers it depends on. For example: the eyes depend on the body,
+ * so the eyes' key includes everything in the body's key. Note {@link Monster#getRandomSeed()} changes
+ * when most attributes change, so the layers that use it are rebuilt unless only the color or
+ * texture changed.
+ * <p>
+ * The images this returns are equivalent to {@link MonsterRenderer#getImage()}. Their Operations are
+ * shared with this renderer and must not be modified.
+ */
+public class IncrementalMonsterRenderer {
+
+    private static class Layer {
+        List<Object> key;
+        final VectorImage image = new VectorImage();
+
+        /**
+         * Return true if the given key is different from this layer's current key. If so the
+         * caller must repaint this layer.
+         */
+        boolean reset(List<Object> newKey) {
+            if (Objects.equals(key, newKey))
+                return false;
+            key = newKey;
+            image.getOperations().clear();
+            return true;
+        }
+    }
+
+    private BodyRenderer bodyRenderer;
+
+    private final Layer horn = new Layer();
+    private final Layer legsUnderBody = new Layer();
+    private final Layer body = new Layer();
+    private final Layer legsAboveBody = new Layer();
+    private final Layer eyes = new Layer();
+    private final Layer mouth = new Layer();
+
+    public synchronized VectorImage getImage(Monster monster) {
+        // the body must be updated first, because the other layers may need the current BodyRenderer
+        List<Object> bodyKey = List.of(monster.bodyShape, monster.hair, monster.bodyColor, monster.includeTexture,
+                monster.getRandomSeed());
+        if (body.reset(bodyKey)) {
+            bodyRenderer = new BodyRenderer(new Rectangle(0,0,100,100), monster.hair, monster.bodyColor, monster.bodyShape, monster.includeTexture, monster.getRandomSeed());
+            bodyRenderer.paint(body.image);
+        }
+
+        if (horn.reset(List.of(monster.horn, monster.bodyShape, monster.includeTexture, monster.getRandomSeed()))) {
+            new HornRenderer(bodyRenderer, monster.horn, new Color(0xCF5C36)).paint(horn.image);
+        }
+
+        List<Object> legsKey = List.of(monster.legs, bodyKey);
+        if (legsUnderBody.reset(legsKey) | legsAboveBody.reset(legsKey)) {
+            LegsRenderer legsRenderer = new LegsRenderer(bodyRenderer, monster.legs);
+            legsRenderer.paintUnderBody(legsUnderBody.image);
+            legsRenderer.paintAboveBody(legsAboveBody.image);
+        }
+
+        if (eyes.reset(List.of(monster.eyeNumber, monster.eyePlacement, monster.eyelid, bodyKey))) {
+            new EyesRenderer(monster, bodyRenderer).paint(eyes.image);
+        }
+
+        // the MouthRenderer only reads the body shape and eye placement from the EyesRenderer, so we
+        // don't need to wait for the eyes (which may be left over from a previous monster)
+        if (mouth.reset(List.of(monster.mouthShape, monster.mouthFill, monster.bodyShape, monster.eyePlacement))) {
+            Graphics2D g = mouth.image.createGraphics();
+            MouthRenderer.getMouthImage(monster.mouthShape, monster.mouthFill, monster.bodyShape, monster.eyePlacement).paint(g);
+            g.dispose();
+        }
+
+        VectorImage composite = new VectorImage();
+        for (Layer layer : new Layer[] { horn, legsUnderBody, body, legsAboveBody, eyes, mouth }) {
+            composite.getOperations().addAll(layer.image.getOperations());
+        }
+        return composite;
+    }
+}
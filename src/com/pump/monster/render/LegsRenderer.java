@@ -1,7 +1,6 @@
 package com.pump.monster.render;
 
 import com.pump.awt.HSLColor;
-import com.pump.geom.Clipper;
 import com.pump.graphics.vector.VectorImage;
 import com.pump.monster.BodyShape;
 import com.pump.monster.Hair;
@@ -9,12 +8,28 @@ import com.pump.monster.Legs;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.List;
 import java.util.Random;
 
 public class LegsRenderer {
 
     private static final double DEFAULT_LEG_WIDTH = 8;
 
+    /**
+     * The flatness used to build the shadow and highlight along the edges of the legs.
+     */
+    private static final double RIM_FLATNESS = .02;
+
+    /**
+     * Edges whose swept parallelogram has less area than this don't contribute to the shadow or highlight.
+     */
+    private static final double MIN_PARALLELOGRAM_AREA = .000001;
+
+    /**
+     * The stroke for the shadows between the toes. The butt caps keep each stroke inside its foot.
+     */
+    private static final BasicStroke TOE_STROKE = new BasicStroke(.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
+
     private final BodyRenderer bodyRenderer;
     private final Legs legs;
     private final Shape bodyShape;
@@ -23,7 +38,13 @@ public class LegsRenderer {
     private final Path2D backLegs = new Path2D.Double();
     private final Path2D middleLegs = new Path2D.Double();
     private final Path2D frontLegs = new Path2D.Double();
-    private final Path2D strokedPath = new Path2D.Double();
+
+    /**
+     * The shadows between the toes of each set of legs. These are stroked, not filled.
+     */
+    private final Path2D backToes = new Path2D.Double();
+    private final Path2D middleToes = new Path2D.Double();
+    private final Path2D frontToes = new Path2D.Double();
 
     private final AffineTransform flipHorizTransform;
 
@@ -61,9 +82,9 @@ public class LegsRenderer {
 
                     dx -= 3;
 
-                    backLegs.append(tx.createTransformedShape(createLeg(tx, leftLeg, 1, 0, .82, .75,
+                    backLegs.append(tx.createTransformedShape(createLeg(tx, backToes, leftLeg, 1, 0, .82, .75,
                             -11 + dx, 4, - 13 + dx, 12)), false);
-                    middleLegs.append(tx.createTransformedShape(createLeg(tx, leftLeg, 1, 0, 1, 1,
+                    middleLegs.append(tx.createTransformedShape(createLeg(tx, middleToes, leftLeg, 1, 0, 1, 1,
                             -8 + dx, 6, - 12 + dx, 15)), false);
 
                     if (bodyRenderer.shapeType == BodyShape.CIRCLE) {
@@ -71,7 +92,7 @@ public class LegsRenderer {
                     }
 
                     double widthPos = bodyRenderer.shapeType == BodyShape.CIRCLE ? .25 : .3;
-                    frontLegs.append(tx.createTransformedShape(createLeg(tx, leftLeg, .1, widthPos, 1, 1.2,
+                    frontLegs.append(tx.createTransformedShape(createLeg(tx, frontToes, leftLeg, .1, widthPos, 1, 1.2,
                             -14 + dx, 12, - 16 + dx, 24)), false);
                 } else {
 
@@ -104,7 +125,7 @@ public class LegsRenderer {
                     double bow = -1 + 7 * random.nextDouble();
                     p.curveTo(x1 - bow, y1 + 2.0 / 5.0 * legHeight, x1 - bow, y2 - 2.0 / 5.0 * legHeight, x1, y2);
 
-                    defineFeet(p, strokedPath, x1, y2, DEFAULT_LEG_WIDTH, tx);
+                    defineFeet(p, frontToes, x1, y2, DEFAULT_LEG_WIDTH, tx);
 
                     // curve back to top-right of leg
                     p.curveTo(x1 - bow + DEFAULT_LEG_WIDTH, y2 - 2.0 / 5.0 * legHeight, x1 - bow + DEFAULT_LEG_WIDTH, y1 + 2.0 / 5.0 * DEFAULT_LEG_WIDTH, x1 + DEFAULT_LEG_WIDTH, y1);
@@ -123,7 +144,7 @@ public class LegsRenderer {
      *                          0 = the top fo the bodyBounds, 1 = the bottom of the bodyBounds
      * @return
      */
-    private Shape createLeg(AffineTransform tx, boolean leftLeg, double nudgeXIncr, double fractionWidthPos, double fractionHeightPos, double legWidthMultiplier, int dx1, int dy1, int dx2, int dy2) throws NoninvertibleTransformException {
+    private Shape createLeg(AffineTransform tx, Path2D toes, boolean leftLeg, double nudgeXIncr, double fractionWidthPos, double fractionHeightPos, double legWidthMultiplier, int dx1, int dy1, int dx2, int dy2) throws NoninvertibleTransformException {
         Point2D point;
         if (leftLeg) {
             point = new Point2D.Double(bodyBounds.getMinX() + fractionWidthPos * bodyBounds.getWidth(), bodyBounds.getY() + bodyBounds.getHeight() * fractionHeightPos);
@@ -141,7 +162,7 @@ public class LegsRenderer {
 
         Path2D foot = new Path2D.Double();
 
-        Point2D p2 = defineFeet(foot, strokedPath, x1 + dx2, y1 + dy2, DEFAULT_LEG_WIDTH * legWidthMultiplier, tx);
+        Point2D p2 = defineFeet(foot, toes, x1 + dx2, y1 + dy2, DEFAULT_LEG_WIDTH * legWidthMultiplier, tx);
         Point2D p3 = getMidPoint(p2.getX(), p2.getY(), x1 + dx2, y1 + dy2);
 
         float strokeWidth = (float) p2.distance(x1 + dx2, y1 + dy2);
@@ -154,6 +175,14 @@ public class LegsRenderer {
         return returnValue;
     }
 
+    /**
+     * Return the union of several shapes.
+     * <p>
+     * This still uses an Area, because {@link #createRim(List, double, double)} needs simple subpaths. A leg's
+     * stroked outline overlaps its foot (and the stroke overlaps itself at its round join), so if we only
+     * appended these shapes the rim would also shade the edges that are hidden inside the leg. This is one
+     * small union per leg, built once with the leg's geometry.
+     */
     private static Shape merge(Shape... shapes) {
         Area returnValue = new Area();
         for (int a = 0; a < shapes.length; a++) {
@@ -178,6 +207,22 @@ public class LegsRenderer {
         return new Point2D.Double( (x1 + x2) / 2.0, (y1 + y2) / 2.0);
     }
 
+    /**
+     * Return the outlines of the back, middle and front legs (in that order). These are empty if
+     * there are no legs.
+     */
+    public Shape[] getLegShapes() {
+        return new Shape[] { new Path2D.Double(backLegs), new Path2D.Double(middleLegs), new Path2D.Double(frontLegs) };
+    }
+
+    /**
+     * Return the lines between the toes of the back, middle and front legs (in that order). These
+     * are stroked to paint the shadows between the toes.
+     */
+    public Shape[] getToePaths() {
+        return new Shape[] { new Path2D.Double(backToes), new Path2D.Double(middleToes), new Path2D.Double(frontToes) };
+    }
+
     public void paintUnderBody(VectorImage img) {
         paint(img, false);
     }
@@ -194,53 +239,83 @@ public class LegsRenderer {
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         if (!foreground) {
-            fillShape(g, backLegs, .96f);
-            fillShape(g, middleLegs, .98f);
+            fillShape(g, backLegs, backToes, .96f);
+            fillShape(g, middleLegs, middleToes, .98f);
         } else {
-            fillShape(g, frontLegs, 1);
+            fillShape(g, frontLegs, frontToes, 1);
         }
 
-        g.setColor(new Color(0,0,0,40));
-        Shape strokedShape = new BasicStroke(.5f).createStrokedShape(strokedPath);
-        g.fill(Clipper.intersect(.01f, strokedShape, backLegs));
-        g.fill(Clipper.intersect(.01f, strokedShape, middleLegs));
-        g.fill(Clipper.intersect(.01f, strokedShape, frontLegs));
-
         g.dispose();
     }
 
-    private void fillShape(Graphics2D g, Shape path, float luminanceMultiplier) {
+    private void fillShape(Graphics2D g, Shape path, Shape toes, float luminanceMultiplier) {
         g.setColor(HSLColor.transform(bodyRenderer.color, 0, 1, luminanceMultiplier));
         g.fill(path);
 
         Rectangle2D pathBounds = path.getBounds2D();
-
-        // paint shadow:
-        Path2D p = new Path2D.Double();
-        p.append(path, false);
-        p.transform(AffineTransform.getTranslateInstance(0, -1.5));
-        Area shadowArea = new Area(path);
-        shadowArea.subtract(new Area(p));
-        g.setPaint(new GradientPaint(0, (float) (pathBounds.getMinY() + pathBounds.getHeight() * .25f), new Color(0,0,0,0),
-                0, (float) pathBounds.getMaxY(), new Color(0,0,0,40)));
-        g.fill(shadowArea);
+        List<double[]> polygons = GeometryUtils.toPolygons(path, RIM_FLATNESS);
 
         // paint highlight:
-        p.reset();
-        p.append(path, false);
-        p.transform(AffineTransform.getTranslateInstance(1,1));
-        Area highlightArea = new Area(path);
-        highlightArea.subtract(new Area(p));
-        highlightArea.subtract(shadowArea);
         g.setPaint(new GradientPaint(0, (float) (pathBounds.getMinY() + pathBounds.getHeight() * .1f), new Color(255,255,255,0),
                 0, (float) pathBounds.getMaxY(), new Color(255,255,255,20)));
-        g.fill(highlightArea);
+        g.fill(createRim(polygons, -1, -1));
+
+        // paint shadow (this used to exclude the highlight, now it covers it):
+        g.setPaint(new GradientPaint(0, (float) (pathBounds.getMinY() + pathBounds.getHeight() * .25f), new Color(0,0,0,0),
+                0, (float) pathBounds.getMaxY(), new Color(0,0,0,40)));
+        g.fill(createRim(polygons, 0, 1.5));
+
+        // the toe shadows end exactly on the edge of the foot, so they don't need to be clipped:
+        g.setColor(new Color(0,0,0,40));
+        g.fill(TOE_STROKE.createStrokedShape(toes));
 
         if (bodyRenderer.includeTexture) {
             BodyRenderer.getTexture(bodyRenderer.hair).paint(g, path, 30, bodyRenderer.randomSeed);
         }
     }
 
+    /**
+     * Return the part of a shape that isn't covered by the same shape translated by (-vx, -vy).
+     * <p>
+     * This is equivalent to subtracting one Area from another, but it's built from the shape's flattened
+     * edges instead: every edge that faces (vx, vy) is swept by (-vx, -vy) into a parallelogram, and each
+     * parallelogram is clipped to the subpath its edge came from.
+     *
+     * @param polygons the flattened subpaths of the shape. Each subpath should be simple (no holes or self-intersections).
+     */
+    private static Path2D createRim(List<double[]> polygons, double vx, double vy) {
+        Path2D returnValue = new Path2D.Double();
+        double[] parallelogram = new double[8];
+        for (double[] polygon : polygons) {
+            double orientation = Math.signum(GeometryUtils.getSignedArea(polygon));
+            for (int a = 0; a < polygon.length; a += 2) {
+                int b = (a + 2) % polygon.length;
+                double dx = polygon[b] - polygon[a];
+                double dy = polygon[b + 1] - polygon[a + 1];
+                // the outward normal is (dy, -dx) * orientation. This skips edges that don't face (vx, vy), and
+                // edges whose parallelogram is too thin to matter (or to have a reliable orientation).
+                if ((dy * vx - dx * vy) * orientation <= MIN_PARALLELOGRAM_AREA)
+                    continue;
+
+                // start with a short side, because clipping to that first discards most of the polygon
+                parallelogram[0] = polygon[b];
+                parallelogram[1] = polygon[b + 1];
+                parallelogram[2] = polygon[b] - vx;
+                parallelogram[3] = polygon[b + 1] - vy;
+                parallelogram[4] = polygon[a] - vx;
+                parallelogram[5] = polygon[a + 1] - vy;
+                parallelogram[6] = polygon[a];
+                parallelogram[7] = polygon[a + 1];
+
+                // clipping preserves the subpath's orientation, so the pieces union correctly with WIND_NON_ZERO
+                double[] piece = GeometryUtils.clipToConvexPolygon(polygon, parallelogram);
+                if (piece.length >= 6)
+                    returnValue.append(GeometryUtils.toPath(piece), false);
+            }
+        }
+        return returnValue;
+    }
+
     private void nudgeInside(Point2D point, double xIncr, double yIncr, double squareLength) {
         // for un-textured bodies, we need to clear an extra few pixels to cover the body's shadow
         int dy = 4;
@@ -252,12 +327,12 @@ public class LegsRenderer {
     /**
      *
      * @param filledPath
-     * @param strokedPath
+     * @param toes the path the shadows between the toes are appended to
      * @param x the x-coordinate of the top-left corner of the foot
      * @param y the y-coordinate of the top-left corner of the foot
      * @param legWidth the width of the foot
      */
-    private Point2D defineFeet(Path2D filledPath, Path2D strokedPath, double x, double y, double legWidth, AffineTransform tx) {
+    private Point2D defineFeet(Path2D filledPath, Path2D toes, double x, double y, double legWidth, AffineTransform tx) {
 
         double scale = legWidth / DEFAULT_LEG_WIDTH;
 
@@ -286,7 +361,7 @@ public class LegsRenderer {
 
         p.transform(AffineTransform.getScaleInstance(scale, scale));
         p.transform(AffineTransform.getTranslateInstance(x,y));
-        strokedPath.append( tx.createTransformedShape(p), false);
+        toes.append( tx.createTransformedShape(p), false);
 
         return new Point2D.Double(legWidth * scale + x, 0 + y);
     }
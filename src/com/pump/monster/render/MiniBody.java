@@ -0,0 +1,96 @@
+package com.pump.monster.render;
+
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.BodyShape;
+import com.pump.monster.Hair;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A small circular body in the same style as a monster's body (shaggy, wooly, etc.), used for the
+ * tips of antennas.
+ * <p>
+ * Building a body is expensive, so each MiniBody is built once at a fixed size and cached. Each
+ * antenna tip paints a shared MiniBody with a transform. Instead of using every possible random seed
+ * we only build {@link #VARIATIONS} variations for each hair/color/texture combination.
+ */
+class MiniBody {
+
+    /**
+     * The width and height of the bounds we build the body in. Antenna tips are usually about
+     * half this size, which keeps the hair at the same scale it has on the main body.
+     */
+    private static final int SIZE = 64;
+
+    /**
+     * The number of different random seeds we use for each hair/color/texture combination.
+     */
+    private static final int VARIATIONS = 4;
+
+    private static final int MAX_CACHE_SIZE = 64;
+
+    private record Key(Hair hair, Color color, boolean includeTexture, int variation) {}
+
+    private static final LinkedHashMap<Key, MiniBody> cache = new LinkedHashMap<>(16, .75f, true);
+
+    /**
+     * Return a cached MiniBody, creating it if necessary.
+     *
+     * @param randomSeed this is reduced to one of a few variations.
+     */
+    static MiniBody get(Hair hair, Color color, boolean includeTexture, int randomSeed) {
+        Key key = new Key(hair, color, includeTexture, Math.floorMod(randomSeed, VARIATIONS));
+        synchronized (cache) {
+            MiniBody miniBody = cache.get(key);
+            if (miniBody != null)
+                return miniBody;
+        }
+
+        // build it outside of the lock; if two threads race the first one stored wins
+        MiniBody miniBody = new MiniBody(key);
+
+        synchronized (cache) {
+            MiniBody existing = cache.putIfAbsent(key, miniBody);
+            if (existing != null)
+                return existing;
+
+            Iterator<Key> iter = cache.keySet().iterator();
+            while (cache.size() > MAX_CACHE_SIZE) {
+                iter.next();
+                iter.remove();
+            }
+        }
+        return miniBody;
+    }
+
+    /**
+     * Discard every cached MiniBody.
+     */
+    static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private final VectorImage image;
+
+    private MiniBody(Key key) {
+        BodyRenderer r = new BodyRenderer(new Rectangle(0, 0, SIZE, SIZE), key.hair, key.color,
+                BodyShape.CIRCLE, key.includeTexture, key.variation + 1);
+        image = r.getBodyImage();
+    }
+
+    /**
+     * Paint this body so its base shape fills the given bounds.
+     */
+    void paint(Graphics2D g, Rectangle2D bounds) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.translate(bounds.getX(), bounds.getY());
+        g2.scale(bounds.getWidth() / SIZE, bounds.getHeight() / SIZE);
+        image.paint(g2);
+        g2.dispose();
+    }
+}
@@ -6,29 +6,126 @@ import com.pump.monster.Monster;
 import java.awt.*;
 
 public class MonsterRenderer {
+
+    private static volatile RenderMetrics defaultMetrics;
+
+    /**
+     * Set the RenderMetrics new MonsterRenderers report to, or null to disable metrics.
+     */
+    public static void setDefaultMetrics(RenderMetrics metrics) {
+        defaultMetrics = metrics;
+    }
+
+    public static RenderMetrics getDefaultMetrics() {
+        return defaultMetrics;
+    }
+
+    /**
+     * Discard every cached body, mouth and horn, so the next monsters are rendered from scratch. This
+     * is for benchmarks that measure how long it takes to render a new monster.
+     */
+    public static void clearCaches() {
+        BodyRenderer.clearCache();
+        MouthRenderer.clearCache();
+        HornRenderer.clearCache();
+    }
+
     private final Monster monster;
+    private RenderMetrics metrics = defaultMetrics;
 
     public MonsterRenderer(Monster monster) {
         this.monster = monster;
     }
 
+    /**
+     * Set the RenderMetrics {@link #getImage()} reports each stage to, or null to disable metrics.
+     */
+    public void setMetrics(RenderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
     public VectorImage getImage() {
-        BodyRenderer bodyRenderer = new BodyRenderer(new Rectangle(0,0,100,100), monster.hair, monster.bodyColor, monster.bodyShape, monster.includeTexture, monster.hashCode());
+        // when metrics are disabled we skip all measurements
+        StageTimer timer = metrics == null ? null : new StageTimer(metrics);
+
+        start(timer);
+        BodyRenderer bodyRenderer = new BodyRenderer(new Rectangle(0,0,100,100), monster.hair, monster.bodyColor, monster.bodyShape, monster.includeTexture, monster.getRandomSeed());
+        stop(timer, RenderMetrics.Stage.BODY, null, 0);
+
+        start(timer);
         EyesRenderer eyesRenderer = new EyesRenderer(monster, bodyRenderer);
+        stop(timer, RenderMetrics.Stage.EYES, null, 0);
+
+        start(timer);
         MouthRenderer mouthRenderer = new MouthRenderer(eyesRenderer);
+        stop(timer, RenderMetrics.Stage.MOUTH, null, 0);
+
+        start(timer);
         HornRenderer hornRenderer = new HornRenderer(bodyRenderer, monster.horn, new Color(0xCF5C36));
+        stop(timer, RenderMetrics.Stage.HORN, null, 0);
+
+        start(timer);
         LegsRenderer legsRenderer = new LegsRenderer(bodyRenderer, monster.legs);
+        stop(timer, RenderMetrics.Stage.LEGS_UNDER_BODY, null, 0);
 
         VectorImage composite = new VectorImage();
         Graphics2D g = composite.createGraphics();
+
+        int size = start(timer, composite);
         hornRenderer.paint(composite);
+        stop(timer, RenderMetrics.Stage.HORN, composite, size);
+
+        size = start(timer, composite);
         legsRenderer.paintUnderBody(composite);
+        stop(timer, RenderMetrics.Stage.LEGS_UNDER_BODY, composite, size);
+
+        // this includes the Body's deferred imagePrepCallbacks
+        size = start(timer, composite);
         bodyRenderer.paint(composite);
+        stop(timer, RenderMetrics.Stage.BODY, composite, size);
+
+        size = start(timer, composite);
         legsRenderer.paintAboveBody(composite);
+        stop(timer, RenderMetrics.Stage.LEGS_ABOVE_BODY, composite, size);
+
+        size = start(timer, composite);
         eyesRenderer.paint(composite);
+        stop(timer, RenderMetrics.Stage.EYES, composite, size);
+
+        size = start(timer, composite);
         mouthRenderer.paint(composite);
+        stop(timer, RenderMetrics.Stage.MOUTH, composite, size);
 
         g.dispose();
+        if (timer != null)
+            timer.flush();
         return composite;
     }
+
+    private static void start(StageTimer timer) {
+        if (timer != null)
+            timer.start();
+    }
+
+    /**
+     * Start the timer (if it isn't null) and return the number of operations in the image.
+     */
+    private static int start(StageTimer timer, VectorImage image) {
+        if (timer == null)
+            return 0;
+        timer.start();
+        return image.getOperations().size();
+    }
+
+    /**
+     * Stop the timer (if it isn't null), and attribute the operations that have been added to the image to the given stage.
+     */
+    private static void stop(StageTimer timer, RenderMetrics.Stage stage, VectorImage image, int initialOperationCount) {
+        if (timer != null)
+            timer.stop(stage, image == null ? 0 : image.getOperations().size() - initialOperationCount);
+    }
 }
@@ -6,23 +6,85 @@ import com.pump.monster.*;
 
 import java.awt.*;
 import java.awt.geom.*;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class MouthRenderer {
 
     Monster monster;
     BodyRenderer bodyRenderer;
     EyesRenderer eyesRenderer;
-    VectorImage mouthImage = new VectorImage();
+    VectorImage mouthImage;
+
+    /**
+     * The finished mouth images, indexed by {@link #getIndex(MouthShape, MouthFill, BodyShape, EyePlacement)}.
+     * These are created as they're needed (or all at once by {@link #warmUp()}).
+     */
+    private static final AtomicReferenceArray<VectorImage> mouthImages = new AtomicReferenceArray<>(
+            MouthShape.values().length * MouthFill.values().length * BodyShape.values().length * EyePlacement.values().length);
+
+    private static int getIndex(MouthShape mouthShape, MouthFill mouthFill, BodyShape bodyShape, EyePlacement eyePlacement) {
+        int index = mouthShape.ordinal();
+        index = index * MouthFill.values().length + mouthFill.ordinal();
+        index = index * BodyShape.values().length + bodyShape.ordinal();
+        index = index * EyePlacement.values().length + eyePlacement.ordinal();
+        return index;
+    }
+
+    /**
+     * Return the image of a mouth. The mouth only depends on these four properties, so each
+     * combination is only created once. The returned image is shared, so it must not be modified.
+     */
+    static VectorImage getMouthImage(MouthShape mouthShape, MouthFill mouthFill, BodyShape bodyShape, EyePlacement eyePlacement) {
+        int index = getIndex(mouthShape, mouthFill, bodyShape, eyePlacement);
+        VectorImage image = mouthImages.get(index);
+        if (image == null) {
+            // if two threads race the first one stored wins
+            mouthImages.compareAndSet(index, null, createMouthImage(mouthShape, mouthFill, bodyShape, eyePlacement));
+            image = mouthImages.get(index);
+        }
+        return image;
+    }
+
+    /**
+     * Create every mouth image now (in parallel) instead of waiting until each is first used.
+     */
+    public static void warmUp() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (MouthShape mouthShape : MouthShape.values()) {
+            for (MouthFill mouthFill : MouthFill.values()) {
+                for (BodyShape bodyShape : BodyShape.values()) {
+                    for (EyePlacement eyePlacement : EyePlacement.values()) {
+                        tasks.add(() -> getMouthImage(mouthShape, mouthFill, bodyShape, eyePlacement));
+                    }
+                }
+            }
+        }
+        tasks.parallelStream().forEach(Runnable::run);
+    }
+
+    /**
+     * Discard every mouth image, so each is created again the next time it's used. This is for
+     * benchmarks that measure how long it takes to create a mouth.
+     */
+    public static void clearCache() {
+        for (int a = 0; a < mouthImages.length(); a++) {
+            mouthImages.set(a, null);
+        }
+    }
 
     public MouthRenderer(EyesRenderer eyesRenderer) {
         this.eyesRenderer = eyesRenderer;
         bodyRenderer = eyesRenderer.body;
         monster = eyesRenderer.monster;
+        mouthImage = getMouthImage(monster.mouthShape, monster.mouthFill, monster.bodyShape, monster.eyePlacement);
+    }
 
-
+    private static VectorImage createMouthImage(MouthShape mouthType, MouthFill mouthFill, BodyShape bodyShape, EyePlacement eyePlacement) {
+        VectorImage mouthImage = new VectorImage();
         Graphics2D g = mouthImage.createGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
@@ -36,13 +98,13 @@ public class MouthRenderer {
         Path2D teethSeparatorPath = new Path2D.Float();
 
 
-        if (monster.eyePlacement == EyePlacement.ANTENNA) {
+        if (eyePlacement == EyePlacement.ANTENNA) {
             g.translate(0, -10);
         }
 
         double widthScaleInCircle = .88;
-        if (monster.mouthFill == MouthFill.NONE) {
-            switch (monster.mouthShape) {
+        if (mouthFill == MouthFill.NONE) {
+            switch (mouthType) {
                 case GRIN:
                     mouthShape.moveTo(24, 55);
                     mouthShape.curveTo(24, 85, 76, 85, 76, 55);
@@ -61,7 +123,7 @@ public class MouthRenderer {
                     break;
             }
 
-            if (monster.bodyShape == BodyShape.CIRCLE) {
+            if (bodyShape == BodyShape.CIRCLE) {
                 scale(mouthShape, widthScaleInCircle, 1);
             }
 
@@ -73,7 +135,7 @@ public class MouthRenderer {
             g.setColor(new Color(0,0,0,60));
             g.draw(mouthShape);
         } else {
-            switch (monster.mouthShape) {
+            switch (mouthType) {
                 case GRIN:
                     mouthShape.moveTo(24, 55);
                     mouthShape.curveTo(24, 85, 76, 85, 76, 55);
@@ -101,7 +163,7 @@ public class MouthRenderer {
                     widthScaleInCircle = .75;
                     break;
                 case FROWN:
-                    if (monster.bodyShape != BodyShape.CIRCLE) {
+                    if (bodyShape != BodyShape.CIRCLE) {
                         MirrorWriter w = new MirrorWriter(50);
                         w.start(50, 50, 69, 50);
                         w.curve(80, 60, 80, 70, 80, 80);
@@ -128,7 +190,7 @@ public class MouthRenderer {
                     break;
             }
 
-            if (monster.bodyShape == BodyShape.CIRCLE) {
+            if (bodyShape == BodyShape.CIRCLE) {
                 scale(mouthShape, widthScaleInCircle, 1, teethSeparatorPath);
             }
 
@@ -137,10 +199,10 @@ public class MouthRenderer {
             g.draw(mouthShape);
 
             Rectangle2D mouthBounds = mouthShape.getBounds2D();
-            if (monster.mouthFill == MouthFill.BLACK) {
+            if (mouthFill == MouthFill.BLACK) {
                 g.setColor(Color.black);
                 g.fill(mouthShape);
-            } else if (monster.mouthFill == MouthFill.ALL_TEETH) {
+            } else if (mouthFill == MouthFill.ALL_TEETH) {
                 g.setColor(Color.white);
                 g.fill(mouthShape);
             } else {
@@ -160,7 +222,7 @@ public class MouthRenderer {
                 double leftDY = 0;
                 double rightDY = 0;
 
-                if (monster.mouthShape == MouthShape.FROWN) {
+                if (mouthType == MouthShape.FROWN) {
                     leftDY += mouthBounds.getHeight() / 8 + rightToothBounds.getHeight() * 1 / 5;
                     rightDY += mouthBounds.getHeight() / 8;
                     leftDX -= mouthBounds.getWidth() / 12;
@@ -181,7 +243,7 @@ public class MouthRenderer {
                 g.fill( Clipper.intersect(.01f, mouthShape, rightTooth));
             }
 
-            if (monster.mouthFill == MouthFill.ALL_TEETH) {
+            if (mouthFill == MouthFill.ALL_TEETH) {
                 g.setColor(new Color(0,0,0));
                 g.fill( Clipper.intersect(.01f, mouthShape, strokeTiny.createStrokedShape(teethSeparatorPath)));
 
@@ -197,6 +259,7 @@ public class MouthRenderer {
         }
 
         g.dispose();
+        return mouthImage;
     }
 
     static void scale(Path2D shape, double scaleX, int scaleY, Path2D... auxShapes) {
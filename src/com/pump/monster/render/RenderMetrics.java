@@ -0,0 +1,27 @@
+package com.pump.monster.render;
+
+/**
+ * This receives timing information about each stage of rendering a monster.
+ * <p>
+ * Implementations are called on whatever thread did the work, so they should be thread-safe
+ * and fast. A typical implementation forwards these values to a metrics registry.
+ *
+ * @see MonsterRenderer#setDefaultMetrics(RenderMetrics)
+ * @see RenderStatistics
+ */
+public interface RenderMetrics {
+
+    enum Stage {
+        HORN, LEGS_UNDER_BODY, BODY, LEGS_ABOVE_BODY, EYES, MOUTH, RASTERIZE, ENCODE_PNG, ENCODE_SVG
+    }
+
+    /**
+     * @param stage the stage that finished.
+     * @param nanos the wall time this stage took.
+     * @param operationCount the number of Operations this stage produced (or, for rasterizing and
+     *                       encoding, the number of Operations it consumed).
+     * @param allocatedBytes the approximate number of bytes the current thread allocated during this stage,
+     *                       or -1 if the JVM can't measure this.
+     */
+    void stageCompleted(Stage stage, long nanos, int operationCount, long allocatedBytes);
+}
@@ -0,0 +1,69 @@
+package com.pump.monster.render;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a thread-safe RenderMetrics that keeps running totals for each stage.
+ */
+public class RenderStatistics implements RenderMetrics {
+
+    private final LongAdder[] counts = createAdders();
+    private final LongAdder[] nanos = createAdders();
+    private final LongAdder[] operations = createAdders();
+    private final LongAdder[] allocatedBytes = createAdders();
+
+    private static LongAdder[] createAdders() {
+        LongAdder[] returnValue = new LongAdder[Stage.values().length];
+        for (int a = 0; a < returnValue.length; a++) {
+            returnValue[a] = new LongAdder();
+        }
+        return returnValue;
+    }
+
+    @Override
+    public void stageCompleted(Stage stage, long nanos, int operationCount, long allocatedBytes) {
+        int i = stage.ordinal();
+        counts[i].increment();
+        this.nanos[i].add(nanos);
+        operations[i].add(operationCount);
+        if (allocatedBytes > 0)
+            this.allocatedBytes[i].add(allocatedBytes);
+    }
+
+    /**
+     * Return the number of times a stage completed.
+     */
+    public long getCount(Stage stage) {
+        return counts[stage.ordinal()].sum();
+    }
+
+    public long getTime(Stage stage, TimeUnit unit) {
+        return unit.convert(nanos[stage.ordinal()].sum(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getOperationCount(Stage stage) {
+        return operations[stage.ordinal()].sum();
+    }
+
+    public long getAllocatedBytes(Stage stage) {
+        return allocatedBytes[stage.ordinal()].sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            long count = getCount(stage);
+            if (count == 0)
+                continue;
+            if (sb.length() > 0)
+                sb.append("\n");
+            sb.append(String.format("%-16s count=%d, total=%d ms, avg=%d us, ops=%d, allocated=%d KB",
+                    stage, count, getTime(stage, TimeUnit.MILLISECONDS),
+                    getTime(stage, TimeUnit.MICROSECONDS) / count,
+                    getOperationCount(stage), getAllocatedBytes(stage) / 1024));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.pump.monster.render;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+/**
+ * This measures one or more {@link RenderMetrics.Stage stages} on the current thread and reports them
+ * to a {@link RenderMetrics}. A stage may be started and stopped several times; its measurements
+ * are added together and reported when {@link #flush()} is called.
+ * <p>
+ * This is not thread-safe. Callers should skip creating a StageTimer entirely when metrics are disabled.
+ */
+public class StageTimer {
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean &&
+                    bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled())
+                return bean;
+        } catch (Throwable t) {
+            // this isn't available on every JVM
+        }
+        return null;
+    }
+
+    private static long getAllocatedBytes() {
+        return THREAD_BEAN == null ? -1 : THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    private final RenderMetrics metrics;
+    private final long[] nanos = new long[RenderMetrics.Stage.values().length];
+    private final long[] allocatedBytes = new long[RenderMetrics.Stage.values().length];
+    private final int[] operationCounts = new int[RenderMetrics.Stage.values().length];
+    private final boolean[] used = new boolean[RenderMetrics.Stage.values().length];
+
+    private long startNanos, startBytes;
+
+    public StageTimer(RenderMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    public void start() {
+        startBytes = getAllocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Attribute everything since the last call to {@link #start()} to the given stage.
+     */
+    public void stop(RenderMetrics.Stage stage, int operationCount) {
+        long t = System.nanoTime() - startNanos;
+        int i = stage.ordinal();
+        nanos[i] += t;
+        operationCounts[i] += operationCount;
+        if (startBytes >= 0)
+            allocatedBytes[i] += getAllocatedBytes() - startBytes;
+        used[i] = true;
+    }
+
+    /**
+     * Report every stage that was measured since the last flush.
+     */
+    public void flush() {
+        for (RenderMetrics.Stage stage : RenderMetrics.Stage.values()) {
+            int i = stage.ordinal();
+            if (!used[i])
+                continue;
+            metrics.stageCompleted(stage, nanos[i], operationCounts[i], THREAD_BEAN == null ? -1 : allocatedBytes[i]);
+            nanos[i] = 0;
+            operationCounts[i] = 0;
+            allocatedBytes[i] = 0;
+            used[i] = false;
+        }
+    }
+}
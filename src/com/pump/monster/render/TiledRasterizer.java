@@ -0,0 +1,281 @@
+package com.pump.monster.render;
+
+import com.pump.graphics.vector.DrawOperation;
+import com.pump.graphics.vector.Operation;
+import com.pump.graphics.vector.ShapeOperation;
+import com.pump.graphics.vector.VectorImage;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This rasterizes a VectorImage one horizontal strip at a time, so the peak memory depends on the
+ * size of a strip instead of the size of the whole image. For example: a 10,000x10,000 image
+ * requires 400 MB as one BufferedImage, but only 16 MB a strip at a time (with the default
+ * {@link #setMaxStripPixels(int) strip size}).
+ * <p>
+ * Each strip is passed to a {@link StripConsumer} (such as a {@link com.pump.monster.ui.PNGEncoder.RowWriter})
+ * before the next strip is painted. The strips are painted with the same transform (offset by a whole
+ * number of pixels), so they fit together seamlessly.
+ * <p>
+ * Each strip is split into tiles that are painted in parallel. We measure the bounds of every
+ * Operation once, and each tile only paints the Operations that overlap it.
+ */
+public class TiledRasterizer {
+
+    /**
+     * This receives each strip of an image from top to bottom.
+     */
+    public interface StripConsumer {
+        /**
+         * Process a strip of the image. The strip is reused for the next strip, so this should not
+         * retain it.
+         *
+         * @param strip a TYPE_INT_ARGB image that is as wide as the whole image.
+         * @param y the row of the whole image that the strip's first row is.
+         * @return false to stop rasterizing (for example, if this export was cancelled).
+         */
+        boolean stripRendered(BufferedImage strip, int y) throws IOException;
+    }
+
+    private static final int TILE_SIZE = 512;
+
+    /**
+     * The number of pixels we pad each Operation's bounds by, because antialiasing may touch
+     * pixels just outside of a shape's bounds.
+     */
+    private static final int PADDING = 2;
+
+    /**
+     * The bounds of each Operation in a VectorImage, in the coordinates of the output image.
+     */
+    private static class OperationIndex {
+        final AffineTransform transform;
+        final Operation[] operations;
+
+        /**
+         * The bounds of each Operation, or NaN if we don't know an Operation's bounds (so it is
+         * always painted).
+         */
+        final double[] minX, minY, maxX, maxY;
+
+        OperationIndex(VectorImage image, AffineTransform transform) {
+            this.transform = new AffineTransform(transform);
+            operations = image.getOperations().toArray(new Operation[0]);
+            minX = new double[operations.length];
+            minY = new double[operations.length];
+            maxX = new double[operations.length];
+            maxY = new double[operations.length];
+            for (int a = 0; a < operations.length; a++) {
+                Rectangle2D r = getBounds(operations[a], transform);
+                if (r == null) {
+                    minX[a] = minY[a] = maxX[a] = maxY[a] = Double.NaN;
+                } else {
+                    minX[a] = r.getMinX() - PADDING;
+                    minY[a] = r.getMinY() - PADDING;
+                    maxX[a] = r.getMaxX() + PADDING;
+                    maxY[a] = r.getMaxY() + PADDING;
+                }
+            }
+        }
+
+        /**
+         * Return the bounds of an Operation in the output image, or null if we can't tell. We ignore
+         * the Operation's clipping, so these bounds may be larger than necessary.
+         */
+        private static Rectangle2D getBounds(Operation op, AffineTransform transform) {
+            if (op instanceof DrawOperation drawOperation)
+                op = drawOperation.toFillOperation();
+            if (!(op instanceof ShapeOperation shapeOp) || shapeOp.getShape() == null)
+                return null;
+
+            AffineTransform tx = new AffineTransform(transform);
+            tx.concatenate(shapeOp.getContext().getTransform());
+            return tx.createTransformedShape(shapeOp.getShape()).getBounds2D();
+        }
+
+        /**
+         * Return a VectorImage of every Operation that may paint pixels inside the given rectangle, or
+         * null if there are none.
+         */
+        VectorImage getImage(int x, int y, int width, int height) {
+            List<Operation> list = new ArrayList<>();
+            for (int a = 0; a < operations.length; a++) {
+                // when the bounds are NaN every comparison is false, so we keep the Operation
+                if (maxX[a] < x || maxY[a] < y || minX[a] > x + width || minY[a] > y + height)
+                    continue;
+                list.add(operations[a]);
+            }
+            if (list.isEmpty())
+                return null;
+            VectorImage returnValue = new VectorImage();
+            returnValue.getOperations().addAll(list);
+            return returnValue;
+        }
+    }
+
+    private int maxStripPixels = 1 << 22;
+    private boolean parallel = true;
+
+    /**
+     * Set the maximum number of pixels in a strip. (Each strip is at least one row tall, though.)
+     * The default is 4,194,304 pixels, or 16 MB.
+     */
+    public void setMaxStripPixels(int maxStripPixels) {
+        if (maxStripPixels < 1)
+            throw new IllegalArgumentException("maxStripPixels (" + maxStripPixels + ") must be at least 1");
+        this.maxStripPixels = maxStripPixels;
+    }
+
+    public int getMaxStripPixels() {
+        return maxStripPixels;
+    }
+
+    /**
+     * Toggle whether tiles are painted on several threads. The default is true.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Rasterize an image as one BufferedImage. This ignores the {@link #setMaxStripPixels(int) strip size}.
+     *
+     * @param image the image to paint.
+     * @param transform the transform from the image to the output image.
+     * @param width the width of the output image.
+     * @param height the height of the output image.
+     */
+    public BufferedImage rasterize(VectorImage image, AffineTransform transform, int width, int height) throws InterruptedException {
+        Objects.requireNonNull(image);
+        Objects.requireNonNull(transform);
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width (" + width + ") and height (" + height + ") must be positive");
+
+        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        paintStrip(new OperationIndex(image, transform), bi, 0);
+        return bi;
+    }
+
+    /**
+     * Rasterize an image one strip at a time.
+     *
+     * @param image the image to paint.
+     * @param transform the transform from the image to the (whole) output image.
+     * @param width the width of the output image.
+     * @param height the height of the output image.
+     * @param consumer the consumer that receives every strip.
+     * @return true if every strip was rasterized, or false if the consumer stopped early.
+     */
+    public boolean rasterize(VectorImage image, AffineTransform transform, int width, int height,
+                             StripConsumer consumer) throws IOException, InterruptedException {
+        Objects.requireNonNull(image);
+        Objects.requireNonNull(transform);
+        Objects.requireNonNull(consumer);
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width (" + width + ") and height (" + height + ") must be positive");
+
+        OperationIndex index = new OperationIndex(image, transform);
+        int stripHeight = Math.max(1, Math.min(height, maxStripPixels / width));
+        BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+
+        for (int y = 0; y < height; y += stripHeight) {
+            Arrays.fill(pixels, 0);
+
+            BufferedImage rows = y + stripHeight <= height ? strip : strip.getSubimage(0, 0, width, height - y);
+            paintStrip(index, rows, y);
+            if (!consumer.stripRendered(rows, y))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Paint part of the output image into a blank strip.
+     *
+     * @param strip a TYPE_INT_ARGB image that is as wide as the output image.
+     * @param y the row of the output image that the strip's first row is.
+     */
+    private void paintStrip(OperationIndex index, BufferedImage strip, int y) throws InterruptedException {
+        int width = strip.getWidth();
+        int height = strip.getHeight();
+        int tileCount = ((width + TILE_SIZE - 1) / TILE_SIZE) * ((height + TILE_SIZE - 1) / TILE_SIZE);
+        if (!parallel || tileCount == 1 || ForkJoinPool.getCommonPoolParallelism() == 1) {
+            VectorImage vi = index.getImage(0, y, width, height);
+            if (vi != null)
+                paint(index, vi, strip, 0, y);
+            return;
+        }
+
+        int[] stripPixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        List<Future<?>> futures = new ArrayList<>(tileCount);
+        try {
+            for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+                for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+                    int x1 = tileX, y1 = tileY;
+                    int tileWidth = Math.min(TILE_SIZE, width - tileX);
+                    int tileHeight = Math.min(TILE_SIZE, height - tileY);
+                    VectorImage vi = index.getImage(x1, y + y1, tileWidth, tileHeight);
+                    if (vi == null)
+                        continue;
+
+                    futures.add(ForkJoinPool.commonPool().submit(() -> {
+                        BufferedImage tile = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+                        paint(index, vi, tile, x1, y + y1);
+
+                        // each tile writes to different pixels, so this doesn't need to be synchronized
+                        int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+                        for (int row = 0; row < tileHeight; row++) {
+                            System.arraycopy(tilePixels, row * tileWidth, stripPixels, (y1 + row) * width + x1, tileWidth);
+                        }
+                    }));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Paint part of the output image into a blank BufferedImage.
+     *
+     * @param vi the Operations that overlap the BufferedImage.
+     * @param x the column of the output image that the BufferedImage's first column is.
+     * @param y the row of the output image that the BufferedImage's first row is.
+     */
+    private void paint(OperationIndex index, VectorImage vi, BufferedImage dest, int x, int y) {
+        Graphics2D g = dest.createGraphics();
+        g.translate(-x, -y);
+        g.transform(index.transform);
+        vi.paint(g);
+        g.dispose();
+    }
+}
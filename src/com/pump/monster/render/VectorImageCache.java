@@ -0,0 +1,148 @@
+package com.pump.monster.render;
+
+import com.pump.graphics.vector.VectorImage;
+import com.pump.monster.Monster;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is a thread-safe LRU cache of the VectorImages {@link MonsterRenderer} creates.
+ * <p>
+ * The cache is bounded both by the number of monsters and by the total number of
+ * {@link com.pump.graphics.vector.Operation Operations} it holds, since a SHAGGY monster
+ * with antennas is several times larger than a plain monster.
+ * <p>
+ * Each call to {@link #getImage(Monster)} returns a new VectorImage, so callers are free to
+ * add to it, but the Operations inside it are shared with the cache and must not be modified.
+ */
+public class VectorImageCache {
+
+    private static final VectorImageCache DEFAULT = new VectorImageCache(500, 250_000);
+
+    /**
+     * Return the VectorImageCache shared by the UI.
+     */
+    public static VectorImageCache get() {
+        return DEFAULT;
+    }
+
+    private final int maxEntries;
+    private final long maxOperations;
+    private final LinkedHashMap<Long, VectorImage> images = new LinkedHashMap<>(16, .75f, true);
+
+    private long operationCount, hitCount, missCount, evictionCount;
+
+    /**
+     * @param maxEntries the maximum number of monsters this cache retains.
+     * @param maxOperations the maximum number of Operations (summed across all monsters) this cache retains.
+     */
+    public VectorImageCache(int maxEntries, long maxOperations) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries (" + maxEntries + ") must be at least 1");
+        if (maxOperations < 1)
+            throw new IllegalArgumentException("maxOperations (" + maxOperations + ") must be at least 1");
+        this.maxEntries = maxEntries;
+        this.maxOperations = maxOperations;
+    }
+
+    /**
+     * Return the image for a monster, rendering it if it isn't already cached.
+     * <p>
+     * The rendering happens outside of this cache's lock, so two threads that miss on
+     * the same monster at the same time may both render it. The first one stored wins.
+     */
+    public VectorImage getImage(Monster monster) {
+        return getImage(monster, null);
+    }
+
+    /**
+     * Return the image for a monster, rendering it with the given renderer if it isn't already cached.
+     *
+     * @param renderer an optional renderer to use when the monster isn't cached. Editors that render
+     *                 a series of similar monsters should keep their own IncrementalMonsterRenderer,
+     *                 so each miss only rebuilds the parts of the monster that changed. If this is
+     *                 null a new {@link MonsterRenderer} is used.
+     */
+    public VectorImage getImage(Monster monster, IncrementalMonsterRenderer renderer) {
+        Long key = monster.toKey();
+
+        VectorImage image;
+        synchronized (this) {
+            image = images.get(key);
+            if (image != null) {
+                hitCount++;
+                return copy(image);
+            }
+            missCount++;
+        }
+
+        image = renderer == null ? new MonsterRenderer(monster).getImage() : renderer.getImage(monster);
+
+        synchronized (this) {
+            VectorImage existing = images.get(key);
+            if (existing != null)
+                return copy(existing);
+
+            images.put(key, image);
+            operationCount += image.getOperations().size();
+            trim();
+        }
+        return copy(image);
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Long, VectorImage>> iter = images.entrySet().iterator();
+        // always keep the most recent image, even if it alone exceeds maxOperations
+        while (images.size() > 1 && (images.size() > maxEntries || operationCount > maxOperations)) {
+            Map.Entry<Long, VectorImage> eldest = iter.next();
+            operationCount -= eldest.getValue().getOperations().size();
+            iter.remove();
+            evictionCount++;
+        }
+    }
+
+    private VectorImage copy(VectorImage image) {
+        VectorImage returnValue = new VectorImage();
+        returnValue.getOperations().addAll(image.getOperations());
+        return returnValue;
+    }
+
+    public synchronized void clear() {
+        images.clear();
+        operationCount = 0;
+    }
+
+    /**
+     * Return the number of monsters currently cached.
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Return the number of Operations currently cached.
+     */
+    public synchronized long getOperationCount() {
+        return operationCount;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "VectorImageCache[ size=" + images.size() + ", operations=" + operationCount +
+                ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + " ]";
+    }
+}
@@ -6,33 +6,50 @@ import com.pump.geom.TransformUtils;
 import com.pump.graphics.vector.*;
 import com.pump.inspector.Inspector;
 import com.pump.io.IOUtils;
+import com.pump.monster.BodyTexture;
 import com.pump.monster.Monster;
+import com.pump.monster.render.IncrementalMonsterRenderer;
 import com.pump.monster.render.MonsterRenderer;
+import com.pump.monster.render.RenderMetrics;
+import com.pump.monster.render.StageTimer;
+import com.pump.monster.render.TiledRasterizer;
+import com.pump.monster.render.VectorImageCache;
 import com.pump.plaf.QPanelUI;
 import com.pump.swing.FileDialogUtils;
 import com.pump.swing.ImageTransferable;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.dnd.DnDConstants;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ExportPanel extends JPanel {
 
     /**
-     * This replaces the PNG/SVG files
+     * This replaces the PNG/SVG files. It runs one {@link ExportJob} at a time.
      */
     private static ExecutorService fileExecutor = Executors.newSingleThreadExecutor();
 
+    /**
+     * This encodes the PNG and SVG files for an ExportJob in parallel.
+     */
+    private static ExecutorService encodeExecutor = Executors.newFixedThreadPool(2);
+
     JLabel widthLabel = new JLabel("Width:");
     JLabel heightLabel = new JLabel("Height:");
     JSpinner widthSpinner = new JSpinner(new SpinnerNumberModel(1000, 10,10_000,10));
@@ -46,8 +63,14 @@ public class ExportPanel extends JPanel {
     JLabel pngSizeLabel = new JLabel();
     JLabel svgSizeLabel = new JLabel();
 
-    private boolean filesDirty = false;
+    /**
+     * This is incremented every time we queue an ExportJob, so older jobs can tell they are stale.
+     */
+    private final AtomicInteger exportGeneration = new AtomicInteger();
+    private final AtomicReference<ExportJob> pendingExport = new AtomicReference<>();
     private VectorImage vectorImage;
+
+    private final IncrementalMonsterRenderer renderer = new IncrementalMonsterRenderer();
     private File pngFile = new File(TempFileManager.get().getDirectory(), "monster.png");
     private File svgFile = new File(TempFileManager.get().getDirectory(), "monster.svg");
 
@@ -204,75 +227,162 @@ public class ExportPanel extends JPanel {
     }
 
     public void copyImage() {
-        BufferedImage bi = createImage();
-        Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new ImageTransferable(bi), null);
+        try {
+            BufferedImage bi = createImage(vectorImage, (Integer) widthSpinner.getModel().getValue(),
+                    (Integer) heightSpinner.getModel().getValue());
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new ImageTransferable(bi), null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A snapshot of everything the PNG and SVG files depend on. This is captured on the EDT, so the
+     * export threads never read Swing components.
+     */
+    private record ExportJob(int generation, Monster monster, VectorImage vectorImage, int width, int height) {}
+
+    /**
+     * Return true if a newer ExportJob has been queued since the given job.
+     */
+    private boolean isStale(ExportJob job) {
+        return job.generation != exportGeneration.get();
     }
 
-    class RefreshFilesRunnable implements Runnable {
-        public void run() {
-            if (!filesDirty || vectorImage == null)
+    /**
+     * This runs the most recent pending ExportJob (if any). Older jobs that were queued while
+     * another job was running are skipped.
+     */
+    private void runPendingExport() {
+        ExportJob job = pendingExport.getAndSet(null);
+        if (job == null || isStale(job))
+            return;
+
+        CompletableFuture<Void> png = CompletableFuture.runAsync(() -> exportPNG(job), encodeExecutor);
+        CompletableFuture<Void> svg = CompletableFuture.runAsync(() -> exportSVG(job), encodeExecutor);
+        CompletableFuture.allOf(png, svg).join();
+    }
+
+    private void exportPNG(ExportJob job) {
+        RenderMetrics metrics = MonsterRenderer.getDefaultMetrics();
+        StageTimer timer = metrics == null ? null : new StageTimer(metrics);
+        File tempFile = null;
+        try {
+            // we render and encode a strip at a time, because at print resolutions the whole image
+            // may not fit in memory
+            AffineTransform tx = createTransform(job.vectorImage, job.width, job.height);
+            int operationCount = job.vectorImage.getOperations().size();
+            tempFile = createTempFile(pngFile);
+            boolean completed;
+            try (FileOutputStream out = new FileOutputStream(tempFile);
+                 PNGEncoder.RowWriter rowWriter = new PNGEncoder().createRowWriter(job.width, job.height, out)) {
+                if (timer != null)
+                    timer.start();
+                completed = new TiledRasterizer().rasterize(job.vectorImage, tx, job.width, job.height, (strip, y) -> {
+                    // every strip paints the same operations, so we only count them once
+                    if (timer != null) {
+                        timer.stop(RenderMetrics.Stage.RASTERIZE, y == 0 ? operationCount : 0);
+                        timer.start();
+                    }
+                    rowWriter.write(strip);
+                    if (timer != null) {
+                        timer.stop(RenderMetrics.Stage.ENCODE_PNG, 0);
+                        // after the last strip there is nothing left to measure
+                        if (y + strip.getHeight() < job.height)
+                            timer.start();
+                    }
+                    return !isStale(job);
+                });
+            }
+            if (!completed)
                 return;
-            filesDirty = false;
 
-            try {
-                ImageIO.write(createImage(), "png", pngFile);
+            if (publish(job, tempFile, pngFile)) {
+                tempFile = null;
                 SwingUtilities.invokeLater(() -> {
+                    if (isStale(job))
+                        return;
                     String sizeStr = IOUtils.formatFileSize(pngFile);
                     pngLabel.setVisible(true);
                     pngSizeLabel.setText(sizeStr);
                 });
-            } catch(Exception e) {
-                e.printStackTrace();
-            }
-
-            try {
-                if (writeSVG()) {
-                    SwingUtilities.invokeLater(() -> {
-                        String sizeStr = IOUtils.formatFileSize(svgFile);
-                        svgLabel.setVisible(true);
-                        svgSizeLabel.setText(sizeStr);
-                    });
-                }
-            } catch(Exception e) {
-                e.printStackTrace();
             }
+        } catch(Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (tempFile != null)
+                tempFile.delete();
+            if (timer != null)
+                timer.flush();
         }
     }
 
-    private boolean writeSVG() throws IOException {
-        if (documentModel.monster.getValue() == null ||
-                documentModel.width.getValue() == null ||
-                documentModel.height.getValue() == null)
-            return false;
-
-        Monster monster = documentModel.monster.getValue();
-        if (monster.includeTexture)
-            monster = new Monster(monster.bodyShape, monster.bodyColor, monster.hair, false, monster.eyeNumber, monster.eyePlacement, monster.eyelid, monster.mouthShape, monster.mouthFill, monster.horn, monster.legs);
+    private void exportSVG(ExportJob job) {
+        RenderMetrics metrics = MonsterRenderer.getDefaultMetrics();
+        StageTimer timer = metrics == null ? null : new StageTimer(metrics);
+        File tempFile = null;
+        try {
+            // the SVGWriter doesn't support textures
+            VectorImage img = job.monster.includeTexture ? BodyTexture.removeTextures(job.vectorImage) : job.vectorImage;
+
+            tempFile = createTempFile(svgFile);
+            SVGWriter svgWriter = new SVGWriter();
+            if (timer != null)
+                timer.start();
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+                svgWriter.write(img, new Dimension(job.width, job.height), fileOut);
+            }
+            if (timer != null)
+                timer.stop(RenderMetrics.Stage.ENCODE_SVG, img.getOperations().size());
 
-        int width = documentModel.width.getValue();
-        int height = documentModel.height.getValue();
+            if (publish(job, tempFile, svgFile)) {
+                tempFile = null;
+                SwingUtilities.invokeLater(() -> {
+                    if (isStale(job))
+                        return;
+                    String sizeStr = IOUtils.formatFileSize(svgFile);
+                    svgLabel.setVisible(true);
+                    svgSizeLabel.setText(sizeStr);
+                });
+            }
+        } catch(Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (tempFile != null)
+                tempFile.delete();
+            if (timer != null)
+                timer.flush();
+        }
+    }
 
-        MonsterRenderer r = new MonsterRenderer(monster);
-        VectorImage img = r.getImage();
+    private static File createTempFile(File target) throws IOException {
+        return File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+    }
 
-        SVGWriter svgWriter = new SVGWriter();
-        try (FileOutputStream fileOut = new FileOutputStream(svgFile)) {
-            svgWriter.write(img, new Dimension(width, height), fileOut);
+    /**
+     * Replace the target file with the temp file, unless the job is stale. The target is replaced
+     * atomically when the file system supports it, so a drag-and-drop never sees a partial file.
+     *
+     * @return true if the temp file was moved.
+     */
+    private boolean publish(ExportJob job, File tempFile, File target) throws IOException {
+        if (isStale(job))
+            return false;
+        try {
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
-
         return true;
     }
 
-    private synchronized BufferedImage createImage() {
-        int width = (Integer) widthSpinner.getModel().getValue();
-        int height = (Integer) heightSpinner.getModel().getValue();
-        BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = bi.createGraphics();
-        g.transform(TransformUtils.createAffineTransform(vectorImage.getBounds(),
-                new Rectangle(1, 1, width - 2,height - 2)));
-        vectorImage.paint(g);
-        g.dispose();
-        return bi;
+    private static BufferedImage createImage(VectorImage vectorImage, int width, int height) throws InterruptedException {
+        return new TiledRasterizer().rasterize(vectorImage, createTransform(vectorImage, width, height), width, height);
+    }
+
+    private static AffineTransform createTransform(VectorImage vectorImage, int width, int height) {
+        return TransformUtils.createAffineTransform(vectorImage.getBounds(),
+                new Rectangle(1, 1, width - 2, height - 2));
     }
 
     private synchronized void refreshAfterMonsterUpdate() {
@@ -284,8 +394,7 @@ public class ExportPanel extends JPanel {
             pngSizeLabel.setText("");
             svgSizeLabel.setText("");
         } else {
-            MonsterRenderer renderer = new MonsterRenderer(monster);
-            vectorImage = renderer.getImage();
+            vectorImage = VectorImageCache.get().getImage(monster, renderer);
             Rectangle2D r = vectorImage.getBounds();
             widthToHeightRatio = (float)( r.getWidth() / r.getHeight() );
             refreshHeightSpinnerBasedOnWidth();
@@ -294,8 +403,18 @@ public class ExportPanel extends JPanel {
         }
     }
 
+    /**
+     * Queue an ExportJob for the current state. If a job is already waiting this replaces it, so
+     * dragging a spinner only exports the last value (plus at most one job that was already running).
+     */
     private void queueRefreshFiles() {
-        filesDirty = true;
-        fileExecutor.execute(new RefreshFilesRunnable());
+        Monster monster = documentModel.monster.getValue();
+        if (monster == null || vectorImage == null)
+            return;
+
+        ExportJob job = new ExportJob(exportGeneration.incrementAndGet(), monster, vectorImage,
+                (Integer) widthSpinner.getModel().getValue(), (Integer) heightSpinner.getModel().getValue());
+        if (pendingExport.getAndSet(job) == null)
+            fileExecutor.execute(this::runPendingExport);
     }
 }
@@ -6,6 +6,7 @@ import com.pump.desktop.ExitControl;
 import com.pump.graphics.vector.VectorImage;
 import com.pump.monster.*;
 import com.pump.monster.render.MonsterRenderer;
+import com.pump.monster.render.MouthRenderer;
 import com.pump.plaf.QPanelUI;
 import com.pump.util.JVM;
 
@@ -16,6 +17,7 @@ import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 public class MonsterFrame extends JFrame {
 
@@ -30,6 +32,18 @@ public class MonsterFrame extends JFrame {
         app.setCopyright(2023, "Jeremy Wood");
         app.setURL(new URL("https://github.com/mickleness/monster-generator/"));
 
+        // decode all the textures and create all the mouths in the background now, so the first monster we
+        // show (probably) doesn't wait for them one at a time. If decoding fails we'll try again when each
+        // texture is painted.
+        CompletableFuture.runAsync(() -> {
+            try {
+                BodyTexture.warmUp();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            MouthRenderer.warmUp();
+        });
+
         SwingUtilities.invokeLater(() -> {
             MonsterFrame m = new MonsterFrame();
             m.pack();
@@ -4,7 +4,9 @@ import com.pump.awt.Dimension2D;
 import com.pump.geom.TransformUtils;
 import com.pump.graphics.vector.VectorImage;
 import com.pump.monster.Monster;
-import com.pump.monster.render.MonsterRenderer;
+import com.pump.monster.render.IncrementalMonsterRenderer;
+import com.pump.monster.render.TiledRasterizer;
+import com.pump.monster.render.VectorImageCache;
 import com.pump.util.Property;
 
 import javax.swing.*;
@@ -12,13 +14,42 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * This shows the current monster.
+ * <p>
+ * Replaying the monster's VectorImage is expensive (especially on HiDPI displays), so this paints
+ * a back buffer that is rendered on a background thread. The back buffer is only rendered again
+ * when the monster, the size of this component, the requested width/height or the display's scale
+ * changes. Until the new back buffer is ready we keep painting the previous one.
+ */
 public class MonsterPreview extends JComponent {
 
+    private static ExecutorService renderExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Everything the back buffer depends on.
+     */
+    private record BackBufferKey(Monster monster, Dimension size, Insets insets, int maxWidth, int maxHeight,
+                                 double scaleX, double scaleY) {}
+
     final DocumentModel docModel;
+    private final IncrementalMonsterRenderer renderer = new IncrementalMonsterRenderer();
+
+    /**
+     * This is incremented every time we request a new back buffer, so a background render can
+     * tell when it has been superseded. The remaining fields are only accessed on the EDT.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+    private BackBufferKey pendingKey, backBufferKey;
+    private BufferedImage backBuffer;
 
     public MonsterPreview(DocumentModel docModel) {
         this.docModel = Objects.requireNonNull(docModel);
@@ -42,26 +73,78 @@ public class MonsterPreview extends JComponent {
             return;
 
         Graphics2D g2 = (Graphics2D) g.create();
+        AffineTransform deviceTransform = g2.getDeviceConfiguration().getDefaultTransform();
+        BackBufferKey key = new BackBufferKey(monster, getSize(), getInsets(),
+                docModel.width.getValue(), docModel.height.getValue(),
+                deviceTransform.getScaleX(), deviceTransform.getScaleY());
 
-        MonsterRenderer renderer = new MonsterRenderer(monster);
+        if (!key.equals(backBufferKey) && !key.equals(pendingKey)) {
+            pendingKey = key;
+            requestBackBuffer(key);
+        }
+
+        if (backBuffer != null) {
+            // if this is stale it is still a better placeholder than a blank component
+            g2.scale(1 / backBufferKey.scaleX, 1 / backBufferKey.scaleY);
+            g2.drawImage(backBuffer, 0, 0, null);
+        }
+        g2.dispose();
+    }
 
-        VectorImage vi = renderer.getImage();
+    private void requestBackBuffer(BackBufferKey key) {
+        int requestGeneration = generation.incrementAndGet();
+        renderExecutor.execute(() -> {
+            if (generation.get() != requestGeneration)
+                return;
+
+            BufferedImage bi = null;
+            try {
+                bi = createBackBuffer(key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                BufferedImage newBackBuffer = bi;
+                SwingUtilities.invokeLater(() -> {
+                    if (newBackBuffer == null) {
+                        // this failed, so let the next repaint request this key again
+                        if (key.equals(pendingKey))
+                            pendingKey = null;
+                        return;
+                    }
+                    if (generation.get() != requestGeneration)
+                        return;
+                    backBuffer = newBackBuffer;
+                    backBufferKey = key;
+                    pendingKey = null;
+                    repaint();
+                });
+            }
+        });
+    }
+
+    private BufferedImage createBackBuffer(BackBufferKey key) throws InterruptedException {
+        VectorImage vi = VectorImageCache.get().getImage(key.monster, renderer);
         Rectangle2D r = vi.getBounds();
-        Dimension compSize = getSize();
-        Insets i = getInsets();
+        Dimension compSize = new Dimension(key.size);
+        Insets i = key.insets;
         compSize.width -= i.left + i.right;
         compSize.height -= i.top + i.bottom;
 
         Dimension maxSize = new Dimension(compSize);
-        maxSize.width = Math.min(maxSize.width, docModel.width.getValue());
-        maxSize.height = Math.min(maxSize.height, docModel.height.getValue());
+        maxSize.width = Math.min(maxSize.width, key.maxWidth);
+        maxSize.height = Math.min(maxSize.height, key.maxHeight);
 
         Dimension scaledSize = Dimension2D.scaleProportionally(r.getBounds().getSize(), maxSize);
         AffineTransform tx = TransformUtils.createAffineTransform(r, new Rectangle(
                 i.left + compSize.width / 2 - scaledSize.width / 2,
                 i.top + compSize.height / 2 - scaledSize.height / 2,
                 scaledSize.width, scaledSize.height));
-        g2.transform(tx);
-        vi.paint(g2);
+
+        tx.preConcatenate(AffineTransform.getScaleInstance(key.scaleX, key.scaleY));
+        return new TiledRasterizer().rasterize(vi, tx,
+                Math.max(1, (int) Math.ceil(key.size.width * key.scaleX)),
+                Math.max(1, (int) Math.ceil(key.size.height * key.scaleY)));
     }
 }
@@ -0,0 +1,780 @@
+package com.pump.monster.ui;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This writes BufferedImages as 8-bit PNGs. It is tuned for our monsters (flat colors, large transparent
+ * areas) and is much faster than ImageIO for large images:
+ * <ul>
+ *     <li>If an image uses 256 colors or less it is written with a palette (this is lossless).</li>
+ *     <li>Each row uses the UP or SUB filter, whichever minimizes the sum of absolute differences. A row
+ *     that matches the row above it (which is common in flat-colored art) is not measured at all.</li>
+ *     <li>Large images are split into blocks of rows that are filtered and compressed in parallel. Like pigz,
+ *     each block is primed with the last 32 KB of the previous block, so this costs very little
+ *     compression. With only one processor (or when {@link #setParallel(boolean)} is off) we
+ *     compress a single stream instead.</li>
+ * </ul>
+ * Very large images can be written a strip at a time with a {@link RowWriter}.
+ * <p>
+ * One PNGEncoder can write several PNGs at the same time.
+ */
+public class PNGEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+
+    /**
+     * The filters we choose from (in order of preference). For our monsters the AVERAGE and PAETH filters
+     * rarely win, and skipping them (and NONE) made flat-colored images slightly smaller and
+     * textured images no larger.
+     */
+    private static final int[] FILTERS = { FILTER_UP, FILTER_SUB };
+
+    /**
+     * The approximate number of bytes of filtered image data in each block we compress.
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The size of the deflate window. Each block is primed with this many bytes of the previous block.
+     */
+    private static final int DICTIONARY_SIZE = 1 << 15;
+
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private int compressionLevel = 4;
+    private boolean paletteEnabled = true;
+    private boolean parallel = true;
+
+    /**
+     * Set the deflate level, from 0 (no compression) to 9 (best compression), or -1 for zlib's default
+     * level. The default is 4, which is what ImageIO uses.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9)
+            throw new IllegalArgumentException("compressionLevel (" + compressionLevel + ") must be between -1 and 9");
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Toggle whether images with 256 colors or less are written with a palette. The default is true.
+     */
+    public void setPaletteEnabled(boolean paletteEnabled) {
+        this.paletteEnabled = paletteEnabled;
+    }
+
+    public boolean isPaletteEnabled() {
+        return paletteEnabled;
+    }
+
+    /**
+     * Toggle whether large images are compressed on several threads. The default is true.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Write a PNG to an OutputStream. This closes the OutputStream when it is finished.
+     */
+    public void write(BufferedImage image, OutputStream out) throws IOException {
+        write(image, Channels.newChannel(out));
+    }
+
+    /**
+     * Write a PNG to a channel. This closes the channel when it is finished.
+     */
+    public void write(BufferedImage image, WritableByteChannel channel) throws IOException {
+        try (channel) {
+            Document document = new Document(image.getWidth(), image.getHeight(), channel, new ImageRows(image, 0));
+            document.writeHeader();
+            document.writeImageData();
+            document.writeTrailer();
+        }
+    }
+
+    /**
+     * Start writing a PNG whose rows will be passed to {@link RowWriter#write(BufferedImage)} from top to
+     * bottom, so the whole image never has to be in memory. If the first call to write() includes every
+     * row this is the same as {@link #write(BufferedImage, OutputStream)}. Otherwise the PNG won't use a
+     * palette, because we have to write the header before we've seen every color.
+     */
+    public RowWriter createRowWriter(int width, int height, OutputStream out) {
+        return createRowWriter(width, height, Channels.newChannel(out));
+    }
+
+    /**
+     * Start writing a PNG whose rows will be passed to {@link RowWriter#write(BufferedImage)} from top to
+     * bottom. See {@link #createRowWriter(int, int, OutputStream)}.
+     */
+    public RowWriter createRowWriter(int width, int height, WritableByteChannel channel) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width (" + width + ") and height (" + height + ") must be positive");
+        return new RowWriter(width, height, Objects.requireNonNull(channel));
+    }
+
+    /**
+     * This writes the rows of a PNG in several installments. Closing a RowWriter closes its channel; if
+     * that happens before every row was written then the PNG is incomplete.
+     */
+    public class RowWriter implements Closeable {
+        private final int width, height;
+        private final WritableByteChannel channel;
+        private Document document;
+        private Document.ImageDataWriter dataWriter;
+        private int nextRow = 0;
+
+        private RowWriter(int width, int height, WritableByteChannel channel) {
+            this.width = width;
+            this.height = height;
+            this.channel = channel;
+        }
+
+        /**
+         * Write every row of the given image. Its width must match the PNG's width.
+         */
+        public void write(BufferedImage rows) throws IOException {
+            if (rows.getWidth() != width)
+                throw new IllegalArgumentException("the width (" + rows.getWidth() + ") must be " + width);
+            if (nextRow + rows.getHeight() > height)
+                throw new IllegalArgumentException("there are " + (height - nextRow) + " rows left, so " + rows.getHeight() + " rows can't be written");
+
+            if (nextRow == 0 && rows.getHeight() == height) {
+                document = new Document(width, height, channel, new ImageRows(rows, 0));
+                document.writeHeader();
+                document.writeImageData();
+                nextRow = height;
+            } else {
+                if (document == null) {
+                    document = new Document(width, height, channel, null);
+                    document.writeHeader();
+                    dataWriter = document.new ImageDataWriter(parallel && ForkJoinPool.getCommonPoolParallelism() > 1);
+                }
+                document.source = new ImageRows(rows, nextRow);
+                for (int y = 0; y < rows.getHeight(); y++) {
+                    dataWriter.writeRow(nextRow++);
+                }
+                document.source = null;
+            }
+
+            if (nextRow == height)
+                document.writeTrailer();
+        }
+
+        /**
+         * Return the number of rows that have been written so far.
+         */
+        public int getRowCount() {
+            return nextRow;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (channel) {
+                if (dataWriter != null)
+                    dataWriter.end();
+            }
+        }
+    }
+
+    /**
+     * The filtered and compressed data for a block of rows.
+     */
+    private record Block(byte[] compressedData, long adler, long length, boolean lastBlock) {}
+
+    /**
+     * The rows of a BufferedImage, which may only be a part of the PNG we're writing.
+     */
+    private static class ImageRows {
+        final BufferedImage image;
+        final int firstRow;
+
+        /**
+         * The pixels of a TYPE_INT_ARGB image, or null if we have to use {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+         */
+        final int[] pixels;
+        final int pixelsOffset, pixelsScanlineStride;
+
+        /**
+         * @param firstRow the row of the PNG that the image's first row is.
+         */
+        ImageRows(BufferedImage image, int firstRow) {
+            this.image = image;
+            this.firstRow = firstRow;
+
+            if (image.getType() == BufferedImage.TYPE_INT_ARGB &&
+                    image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel sampleModel &&
+                    image.getRaster().getDataBuffer() instanceof DataBufferInt dataBuffer &&
+                    dataBuffer.getNumBanks() == 1) {
+                pixels = dataBuffer.getData();
+                pixelsScanlineStride = sampleModel.getScanlineStride();
+                pixelsOffset = dataBuffer.getOffset() + sampleModel.getOffset(
+                        -image.getRaster().getSampleModelTranslateX(), -image.getRaster().getSampleModelTranslateY());
+            } else {
+                pixels = null;
+                pixelsOffset = 0;
+                pixelsScanlineStride = 0;
+            }
+        }
+
+        void getRow(int y, int[] dest) {
+            y -= firstRow;
+            if (pixels != null) {
+                System.arraycopy(pixels, pixelsOffset + y * pixelsScanlineStride, dest, 0, dest.length);
+            } else {
+                image.getRGB(0, y, dest.length, 1, dest, 0, dest.length);
+            }
+        }
+    }
+
+    private class Document {
+        final WritableByteChannel channel;
+        final int width, height;
+
+        /**
+         * The rows we're currently reading from.
+         */
+        ImageRows source;
+
+        /**
+         * The ARGB value of each palette entry, or null if we write RGBA pixels.
+         */
+        int[] palette;
+        Map<Integer, Integer> paletteIndices;
+
+        final int bytesPerPixel;
+        final int rowLength;
+
+        boolean zlibHeaderWritten = false;
+        long adler = 1;
+
+        /**
+         * @param source every row of the image, or null if the rows will be provided later. If this is
+         *               null we won't use a palette.
+         */
+        Document(int width, int height, WritableByteChannel channel, ImageRows source) {
+            this.channel = channel;
+            this.width = width;
+            this.height = height;
+            this.source = source;
+
+            if (paletteEnabled && source != null)
+                createPalette();
+
+            bytesPerPixel = palette == null ? 4 : 1;
+            rowLength = width * bytesPerPixel;
+        }
+
+        void getRow(int y, int[] dest) {
+            source.getRow(y, dest);
+        }
+
+        /**
+         * Collect every color in the image, or give up as soon as we find more than {@link #MAX_PALETTE_SIZE} colors.
+         */
+        void createPalette() {
+            Map<Integer, Integer> indices = new HashMap<>();
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                getRow(y, row);
+                int lastColor = 0;
+                for (int x = 0; x < width; x++) {
+                    int argb = normalize(row[x]);
+                    if (x > 0 && argb == lastColor)
+                        continue;
+                    lastColor = argb;
+                    if (indices.putIfAbsent(argb, indices.size()) == null && indices.size() > MAX_PALETTE_SIZE)
+                        return;
+                }
+            }
+
+            palette = new int[indices.size()];
+            for (Map.Entry<Integer, Integer> entry : indices.entrySet()) {
+                palette[entry.getValue()] = entry.getKey();
+            }
+            paletteIndices = indices;
+        }
+
+        /**
+         * Convert every fully transparent color to the same value, so they share one palette entry.
+         */
+        int normalize(int argb) {
+            return (argb >>> 24) == 0 ? 0 : argb;
+        }
+
+        /**
+         * Write the signature and every chunk before the image data.
+         */
+        void writeHeader() throws IOException {
+            writeFully(ByteBuffer.wrap(SIGNATURE));
+
+            ByteBuffer header = ByteBuffer.allocate(13);
+            header.putInt(width);
+            header.putInt(height);
+            header.put((byte) 8);
+            header.put((byte) (palette == null ? 6 : 3));
+            header.put((byte) 0);
+            header.put((byte) 0);
+            header.put((byte) 0);
+            writeChunk("IHDR", header.array());
+
+            if (palette != null) {
+                byte[] rgb = new byte[palette.length * 3];
+                int alphaCount = 0;
+                for (int a = 0; a < palette.length; a++) {
+                    rgb[3 * a] = (byte) (palette[a] >> 16);
+                    rgb[3 * a + 1] = (byte) (palette[a] >> 8);
+                    rgb[3 * a + 2] = (byte) palette[a];
+                    if ((palette[a] >>> 24) != 255)
+                        alphaCount = a + 1;
+                }
+                writeChunk("PLTE", rgb);
+
+                if (alphaCount > 0) {
+                    byte[] alpha = new byte[alphaCount];
+                    for (int a = 0; a < alphaCount; a++) {
+                        alpha[a] = (byte) (palette[a] >>> 24);
+                    }
+                    writeChunk("tRNS", alpha);
+                }
+            }
+        }
+
+        void writeTrailer() throws IOException {
+            writeChunk("IEND", new byte[0]);
+        }
+
+        void writeImageData() throws IOException {
+            int rowsPerBlock = getRowsPerBlock();
+            int blockCount = (height + rowsPerBlock - 1) / rowsPerBlock;
+            if (parallel && blockCount > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                writeImageDataInParallel(rowsPerBlock, blockCount);
+            } else {
+                ImageDataWriter dataWriter = new ImageDataWriter(false);
+                try {
+                    for (int y = 0; y < height; y++) {
+                        dataWriter.writeRow(y);
+                    }
+                } finally {
+                    dataWriter.end();
+                }
+            }
+        }
+
+        int getRowsPerBlock() {
+            return Math.max(1, BLOCK_SIZE / (rowLength + 1));
+        }
+
+        /**
+         * Filter and compress blocks of rows on several threads, and write them in order as they finish.
+         */
+        void writeImageDataInParallel(int rowsPerBlock, int blockCount) throws IOException {
+            ArrayDeque<Future<Block>> futures = new ArrayDeque<>();
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int maxQueuedBlocks = 2 * pool.getParallelism();
+
+            int nextBlock = 0;
+            try {
+                for (int blockIndex = 0; blockIndex < blockCount; blockIndex++) {
+                    // keep a few blocks queued, but don't hold the whole compressed image in memory
+                    while (nextBlock < blockCount && futures.size() < maxQueuedBlocks) {
+                        int startRow = nextBlock * rowsPerBlock;
+                        futures.add(pool.submit(createBlockTask(startRow, Math.min(height, startRow + rowsPerBlock))));
+                        nextBlock++;
+                    }
+                    writeBlock(futures.removeFirst());
+                }
+            } finally {
+                for (Future<Block> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Wait for a block and write it as an IDAT chunk.
+         */
+        void writeBlock(Future<Block> future) throws IOException {
+            Block block;
+            try {
+                block = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+
+            adler = combineAdler32(adler, block.adler, block.length);
+
+            // the zlib stream is the 2-byte header, the concatenated blocks and the adler32 checksum
+            ByteArrayOutputStream data = new ByteArrayOutputStream(block.compressedData.length + 6);
+            if (!zlibHeaderWritten) {
+                data.writeBytes(getZlibHeader());
+                zlibHeaderWritten = true;
+            }
+            data.writeBytes(block.compressedData);
+            if (block.lastBlock)
+                data.writeBytes(ByteBuffer.allocate(4).putInt((int) adler).array());
+            writeChunk("IDAT", data.toByteArray());
+        }
+
+        byte[] getZlibHeader() {
+            int level = compressionLevel == Deflater.DEFAULT_COMPRESSION ? 6 : compressionLevel;
+            int levelFlag = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+            int cmf = 0x78;
+            int flg = levelFlag << 6;
+            flg += 31 - ((cmf << 8) + flg) % 31;
+            return new byte[] { (byte) cmf, (byte) flg };
+        }
+
+        /**
+         * Create a task that filters and compresses a block of rows as raw deflate data.
+         */
+        Callable<Block> createBlockTask(int startRow, int endRow) {
+            return () -> {
+                // we also filter the rows before this block that fill the deflate dictionary
+                int dictionaryRows = startRow == 0 ? 0 : Math.min(startRow, (DICTIONARY_SIZE + rowLength) / (rowLength + 1));
+                int firstRow = startRow - dictionaryRows;
+
+                byte[] filtered = new byte[(endRow - firstRow) * (rowLength + 1)];
+                RowFilter filter = new RowFilter();
+                if (firstRow > 0)
+                    filter.readRow(firstRow - 1);
+                for (int y = firstRow; y < endRow; y++) {
+                    filter.readRow(y);
+                    filter.filterRow(filtered, (y - firstRow) * (rowLength + 1));
+                }
+
+                int dataOffset = dictionaryRows * (rowLength + 1);
+                return compressBlock(filtered, dataOffset, filtered.length - dataOffset, endRow == height);
+            };
+        }
+
+        /**
+         * Compress filtered rows as raw deflate data. The bytes before dataOffset (up to
+         * {@link #DICTIONARY_SIZE} of them) are the end of the previous block, and are used as the dictionary.
+         */
+        Block compressBlock(byte[] filtered, int dataOffset, int dataLength, boolean lastBlock) {
+            Adler32 adler = new Adler32();
+            adler.update(filtered, dataOffset, dataLength);
+
+            Deflater deflater = new Deflater(compressionLevel, true);
+            try {
+                if (dataOffset > 0) {
+                    int dictionaryLength = Math.min(DICTIONARY_SIZE, dataOffset);
+                    deflater.setDictionary(filtered, dataOffset - dictionaryLength, dictionaryLength);
+                }
+                deflater.setInput(filtered, dataOffset, dataLength);
+
+                if (lastBlock)
+                    deflater.finish();
+
+                // a SYNC_FLUSH ends each block on a byte boundary, so the next block can follow it
+                ByteArrayOutputStream out = new ByteArrayOutputStream(dataLength / 4 + 64);
+                byte[] buffer = new byte[1 << 16];
+                while (true) {
+                    int k = deflater.deflate(buffer, 0, buffer.length, lastBlock ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, k);
+                    if (lastBlock ? deflater.finished() : k < buffer.length)
+                        break;
+                }
+                return new Block(out.toByteArray(), adler.getValue(), dataLength, lastBlock);
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /**
+         * This filters rows in order and compresses them. Either they are all compressed as one zlib
+         * stream on this thread, or each block of rows is compressed on the common ForkJoinPool.
+         * The caller must call {@link #end()} when it is finished.
+         */
+        class ImageDataWriter {
+            final boolean inParallel;
+            final RowFilter filter = new RowFilter();
+            final int rowsPerBlock = getRowsPerBlock();
+
+            /**
+             * The current block of filtered rows. When compressing in parallel this starts with
+             * the end of the previous block (see {@link #dataOffset}).
+             */
+            byte[] filtered;
+            int dataOffset = 0;
+            int rowsInBlock = 0;
+
+            final Deflater deflater;
+            final byte[] buffer;
+            final ArrayDeque<Future<Block>> futures = new ArrayDeque<>();
+
+            ImageDataWriter(boolean inParallel) {
+                this.inParallel = inParallel;
+                filtered = new byte[rowsPerBlock * (rowLength + 1)];
+                deflater = inParallel ? null : new Deflater(compressionLevel);
+                buffer = inParallel ? null : new byte[1 << 16];
+            }
+
+            void writeRow(int y) throws IOException {
+                filter.readRow(y);
+                filter.filterRow(filtered, dataOffset + rowsInBlock * (rowLength + 1));
+                rowsInBlock++;
+                if (rowsInBlock == rowsPerBlock || y == height - 1)
+                    flushBlock(y == height - 1);
+            }
+
+            private void flushBlock(boolean lastBlock) throws IOException {
+                int dataLength = rowsInBlock * (rowLength + 1);
+                rowsInBlock = 0;
+                if (inParallel) {
+                    byte[] data = filtered;
+                    int offset = dataOffset;
+                    futures.add(ForkJoinPool.commonPool().submit(() -> compressBlock(data, offset, dataLength, lastBlock)));
+
+                    if (!lastBlock) {
+                        dataOffset = Math.min(DICTIONARY_SIZE, offset + dataLength);
+                        filtered = new byte[dataOffset + rowsPerBlock * (rowLength + 1)];
+                        System.arraycopy(data, offset + dataLength - dataOffset, filtered, 0, dataOffset);
+                    }
+
+                    // keep a few blocks queued, but don't hold the whole compressed image in memory
+                    while (futures.size() > 2 * ForkJoinPool.getCommonPoolParallelism() || (lastBlock && !futures.isEmpty())) {
+                        writeBlock(futures.removeFirst());
+                    }
+                } else {
+                    deflater.setInput(filtered, 0, dataLength);
+                    if (lastBlock)
+                        deflater.finish();
+                    while (true) {
+                        int k = deflater.deflate(buffer);
+                        if (k > 0)
+                            writeChunk("IDAT", buffer, k);
+                        if (lastBlock ? deflater.finished() : deflater.needsInput())
+                            break;
+                    }
+                }
+            }
+
+            void end() {
+                if (deflater != null)
+                    deflater.end();
+                for (Future<Block> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * This converts rows of pixels to bytes and filters them. Each task needs its own RowFilter.
+         */
+        class RowFilter {
+            final int[] argbRow = new int[width];
+            byte[] previousRow = new byte[rowLength];
+            byte[] currentRow = new byte[rowLength];
+
+            /**
+             * Read a row of the image. The row that was previously read becomes the row above it.
+             */
+            void readRow(int y) {
+                byte[] t = previousRow;
+                previousRow = currentRow;
+                currentRow = t;
+
+                getRow(y, argbRow);
+                if (palette == null) {
+                    for (int x = 0, i = 0; x < width; x++) {
+                        int argb = argbRow[x];
+                        currentRow[i++] = (byte) (argb >> 16);
+                        currentRow[i++] = (byte) (argb >> 8);
+                        currentRow[i++] = (byte) argb;
+                        currentRow[i++] = (byte) (argb >>> 24);
+                    }
+                } else {
+                    int lastColor = 0;
+                    byte lastIndex = 0;
+                    for (int x = 0; x < width; x++) {
+                        int argb = normalize(argbRow[x]);
+                        if (x == 0 || argb != lastColor) {
+                            lastColor = argb;
+                            lastIndex = (byte) paletteIndices.get(argb).intValue();
+                        }
+                        currentRow[x] = lastIndex;
+                    }
+                }
+            }
+
+            /**
+             * Write the filter type and the filtered current row to the given array. The first row
+             * of the image must be read when the previous row is all zeroes.
+             */
+            void filterRow(byte[] dest, int destOffset) {
+                int filterType;
+                if (palette != null) {
+                    // the PNG spec recommends not filtering palette images
+                    filterType = FILTER_NONE;
+                } else if (Arrays.equals(currentRow, previousRow)) {
+                    // this is common in flat art (especially in transparent margins)
+                    filterType = FILTER_UP;
+                } else {
+                    filterType = chooseFilter();
+                }
+
+                dest[destOffset] = (byte) filterType;
+                applyFilter(filterType, dest, destOffset + 1);
+            }
+
+            /**
+             * Return the filter in {@link #FILTERS} that minimizes the sum of the absolute values of the
+             * filtered bytes (as signed values).
+             */
+            int chooseFilter() {
+                int bestFilter = -1;
+                long bestSum = Long.MAX_VALUE;
+                for (int filterType : FILTERS) {
+                    long sum = getFilteredSum(filterType, bestSum);
+                    if (sum < bestSum) {
+                        bestSum = sum;
+                        bestFilter = filterType;
+                    }
+                }
+                return bestFilter;
+            }
+
+            /**
+             * Return the sum of the absolute values of the current row's bytes after the given filter is
+             * applied, or a value that is at least maxSum if we gave up early.
+             */
+            long getFilteredSum(int filterType, long maxSum) {
+                byte[] cur = currentRow, prev = previousRow;
+                int bpp = bytesPerPixel;
+                long sum = 0;
+                // measure a few pixels at a time, so we can abandon a bad filter early
+                for (int start = 0; start < rowLength; start += 256) {
+                    int end = Math.min(rowLength, start + 256);
+                    int i = start;
+                    if (filterType == FILTER_SUB) {
+                        for (; i < bpp; i++) {
+                            sum += Math.abs(cur[i]);
+                        }
+                        for (; i < end; i++) {
+                            sum += Math.abs((byte) (cur[i] - cur[i - bpp]));
+                        }
+                    } else {
+                        for (; i < end; i++) {
+                            sum += Math.abs((byte) (cur[i] - prev[i]));
+                        }
+                    }
+                    if (sum >= maxSum)
+                        return sum;
+                }
+                return sum;
+            }
+
+            /**
+             * Write the current row with the given filter applied.
+             */
+            void applyFilter(int filterType, byte[] dest, int destOffset) {
+                byte[] cur = currentRow, prev = previousRow;
+                if (filterType == FILTER_SUB) {
+                    int bpp = bytesPerPixel;
+                    System.arraycopy(cur, 0, dest, destOffset, bpp);
+                    for (int i = bpp; i < rowLength; i++) {
+                        dest[destOffset + i] = (byte) (cur[i] - cur[i - bpp]);
+                    }
+                } else if (filterType == FILTER_UP) {
+                    for (int i = 0; i < rowLength; i++) {
+                        dest[destOffset + i] = (byte) (cur[i] - prev[i]);
+                    }
+                } else {
+                    System.arraycopy(cur, 0, dest, destOffset, rowLength);
+                }
+            }
+        }
+
+        void writeChunk(String type, byte[] data) throws IOException {
+            writeChunk(type, data, data.length);
+        }
+
+        void writeChunk(String type, byte[] data, int length) throws IOException {
+            byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            CRC32 crc = new CRC32();
+            crc.update(typeBytes);
+            crc.update(data, 0, length);
+
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(length);
+            header.put(typeBytes);
+            header.flip();
+
+            ByteBuffer footer = ByteBuffer.allocate(4);
+            footer.putInt((int) crc.getValue());
+            footer.flip();
+
+            writeFully(header);
+            writeFully(ByteBuffer.wrap(data, 0, length));
+            writeFully(footer);
+        }
+
+        void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Return the Adler-32 checksum of two sequences of bytes, given the checksum of each. This is
+     * zlib's adler32_combine.
+     *
+     * @param length2 the number of bytes in the second sequence.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += (adler1 >>> 16) + (adler2 >>> 16) + base - remainder;
+        if (sum1 >= base)
+            sum1 -= base;
+        if (sum1 >= base)
+            sum1 -= base;
+        if (sum2 >= base << 1)
+            sum2 -= base << 1;
+        if (sum2 >= base)
+            sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+}
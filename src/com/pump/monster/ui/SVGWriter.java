@@ -1,6 +1,5 @@
 package com.pump.monster.ui;
 
-import com.pump.geom.ShapeStringUtils;
 import com.pump.geom.ShapeUtils;
 import com.pump.geom.TransformUtils;
 import com.pump.graphics.vector.*;
@@ -9,111 +8,781 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
-import java.io.OutputStream;
-import java.io.PrintStream;
-import java.util.IdentityHashMap;
-import java.util.LinkedList;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * This converts VectorImages to SVGs. It is only intended to support the bare minimum for
  * this monster-generator project. We can add to it as needed, but we don't want to overengineer it.
+ * <p>
+ * The SVG is streamed: each Operation is written as soon as it is visited. Each unique gradient is
+ * defined once (immediately before it is first used), and a path that appears several times
+ * (even at different positions) is defined once and then referenced with {@code <use>} elements.
+ * <p>
+ * Coordinates are written with a fixed number of fraction digits. Each call to {@code write(..)}
+ * keeps its own state, so one SVGWriter can write several SVGs at the same time.
+ * <p>
+ * In {@link #setCompact(boolean) compact mode} the output is optimized for size instead of
+ * readability: see {@link #setCompact(boolean)}.
  */
 public class SVGWriter {
-    public void write(VectorImage vectorImage, Dimension exportSize, OutputStream out) {
-        try (PrintStream ps = new PrintStream(out)) {
-            ps.println("<?xml version=\"1.0\" encoding=\"iso-8859-1\"?>");
-            ps.println("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">");
-            ps.println("<svg version=\"1.1\" id=\"buildings_1\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"");
-            ps.println("\tx=\"0px\" y=\"0px\" width=\"" + exportSize.width + "px\" height=\"" + exportSize.height + "px\" viewBox=\"0 0 " + exportSize.width + " " + exportSize.height + "\"");
-            ps.println("\t xml:space=\"preserve\">");
+
+    /**
+     * Paths with fewer coordinates than this are always written inline, because a {@code <use>}
+     * element would be about as long as the path data it replaces.
+     */
+    private static final int MIN_REUSED_COORDINATES = 12;
+
+    private int fractionDigits = 3;
+    private boolean compact = false;
+    private double compactPrecision = .0005;
+
+    /**
+     * Set the number of digits written after the decimal point of each coordinate. The default is 3.
+     */
+    public void setFractionDigits(int fractionDigits) {
+        if (fractionDigits < 0 || fractionDigits > 8)
+            throw new IllegalArgumentException("fractionDigits (" + fractionDigits + ") must be between 0 and 8");
+        this.fractionDigits = fractionDigits;
+    }
+
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    /**
+     * Toggle compact mode. In compact mode this SVGWriter:
+     * <ul>
+     *     <li>rounds coordinates according to {@link #setCompactPrecision(double)} (instead of
+     *     {@link #setFractionDigits(int)}),</li>
+     *     <li>writes relative path commands, omitting repeated commands and unnecessary separators,</li>
+     *     <li>merges consecutive fills with the same style into one path when they don't overlap,</li>
+     *     <li>skips operations that are completely transparent, and</li>
+     *     <li>omits whitespace and default attributes.</li>
+     * </ul>
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Set how much compact mode may round each coordinate, as a fraction of the larger
+     * dimension of the exported image. The default is .0005, so a 300-pixel-wide SVG
+     * uses 1 fraction digit and a 2000-pixel-wide SVG uses whole numbers.
+     */
+    public void setCompactPrecision(double compactPrecision) {
+        if (!(compactPrecision > 0))
+            throw new IllegalArgumentException("compactPrecision (" + compactPrecision + ") must be positive");
+        this.compactPrecision = compactPrecision;
+    }
+
+    public double getCompactPrecision() {
+        return compactPrecision;
+    }
+
+    /**
+     * Return the number of fraction digits compact mode uses for a given export size. Each
+     * coordinate can then be off by at most half of the last digit.
+     */
+    private int getCompactFractionDigits(Dimension exportSize) {
+        double maxError = compactPrecision * Math.max(exportSize.width, exportSize.height);
+        int digits = (int) Math.ceil(-Math.log10(2 * maxError));
+        return Math.max(0, Math.min(8, digits));
+    }
+
+    /**
+     * Write an SVG to an OutputStream. This closes the OutputStream when it is finished.
+     */
+    public void write(VectorImage vectorImage, Dimension exportSize, OutputStream out) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.ISO_8859_1))) {
+            write(vectorImage, exportSize, writer);
+        }
+    }
+
+    /**
+     * Write an SVG to a channel. This closes the channel when it is finished.
+     */
+    public void write(VectorImage vectorImage, Dimension exportSize, WritableByteChannel channel) throws IOException {
+        try (Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.ISO_8859_1))) {
+            write(vectorImage, exportSize, writer);
+        }
+    }
+
+    /**
+     * Write an SVG to a Writer. This flushes but does not close the Writer. The Writer should
+     * be buffered, because this writes to it in many small pieces.
+     */
+    public void write(VectorImage vectorImage, Dimension exportSize, Writer writer) throws IOException {
+        int digits = compact ? getCompactFractionDigits(exportSize) : fractionDigits;
+        new Document(writer, digits, compact).write(vectorImage, exportSize);
+        writer.flush();
+    }
+
+    /**
+     * A gradient after it has been converted to export coordinates, so equal gradients can share one definition.
+     */
+    private record GradientKey(long x1, long y1, long x2, long y2, int argb1, int argb2, boolean cyclic) {}
+
+    /**
+     * The segments of a path and their quantized coordinates. Two PathKeys are equal if they describe the
+     * same path after subtracting each path's (dx, dy) offset, so identical paths at different positions match.
+     */
+    private static class PathKey {
+        byte[] types = new byte[64];
+        long[] coords = new long[256];
+        int typeCount, coordCount;
+        int windingRule;
+        long dx, dy;
+        long hash;
+        long minX, minY, maxX, maxY;
+
+        void reset() {
+            typeCount = 0;
+            coordCount = 0;
+        }
+
+        void addType(int type) {
+            if (typeCount == types.length)
+                types = Arrays.copyOf(types, types.length * 2);
+            types[typeCount++] = (byte) type;
+        }
+
+        void addCoordinate(long value) {
+            if (coordCount == coords.length)
+                coords = Arrays.copyOf(coords, coords.length * 2);
+            coords[coordCount++] = value;
+        }
+
+        /**
+         * Anchor this path at its first point and recalculate its hash and bounds.
+         * (The bounds include control points, so they may be larger than the actual shape.)
+         */
+        void complete() {
+            dx = coordCount > 0 ? coords[0] : 0;
+            dy = coordCount > 0 ? coords[1] : 0;
+            minX = maxX = dx;
+            minY = maxY = dy;
+            for (int a = 2; a < coordCount; a += 2) {
+                minX = Math.min(minX, coords[a]);
+                maxX = Math.max(maxX, coords[a]);
+                minY = Math.min(minY, coords[a + 1]);
+                maxY = Math.max(maxY, coords[a + 1]);
+            }
+            long h = typeCount;
+            for (int a = 0; a < typeCount; a++) {
+                h = h * 31 + types[a];
+            }
+            for (int a = 0; a < coordCount; a += 2) {
+                h = h * 0x9E3779B97F4A7C15L + (coords[a] - dx);
+                h = h * 0x9E3779B97F4A7C15L + (coords[a + 1] - dy);
+            }
+            hash = h;
+        }
+
+        PathKey copy() {
+            PathKey returnValue = new PathKey();
+            returnValue.types = Arrays.copyOf(types, typeCount);
+            returnValue.coords = Arrays.copyOf(coords, coordCount);
+            returnValue.typeCount = typeCount;
+            returnValue.coordCount = coordCount;
+            returnValue.windingRule = windingRule;
+            returnValue.dx = dx;
+            returnValue.dy = dy;
+            returnValue.hash = hash;
+            return returnValue;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PathKey other))
+                return false;
+            if (hash != other.hash || typeCount != other.typeCount || coordCount != other.coordCount)
+                return false;
+            if (!Arrays.equals(types, 0, typeCount, other.types, 0, typeCount))
+                return false;
+            for (int a = 0; a < coordCount; a += 2) {
+                if (coords[a] - dx != other.coords[a] - other.dx ||
+                        coords[a + 1] - dy != other.coords[a + 1] - other.dy)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * This writes one SVG document. All the mutable state (and reusable buffers) live here.
+     */
+    private static class Document {
+        final Writer out;
+        final boolean compact;
+        final long scale;
+        final char[] numberChars = new char[24];
+        final double[] segment = new double[6];
+        final AffineTransform tx = new AffineTransform();
+        final PathKey path = new PathKey();
+        final Map<GradientKey, String> gradientIDs = new HashMap<>();
+        final Map<PathKey, String> pathIDs = new HashMap<>();
+
+        // the state of the relative path data (only used in compact mode)
+        long currentX, currentY, subpathX, subpathY;
+        char lastCommand;
+        boolean lastNumberHadDot;
+
+        // the <path> element that is still open, so more subpaths can be merged into it (only used in compact mode)
+        boolean pathOpen;
+        Paint openPaint;
+        String openPaintID;
+        int openWindingRule;
+        long openMinX, openMinY, openMaxX, openMaxY;
+
+        Document(Writer out, int fractionDigits, boolean compact) {
+            this.out = out;
+            this.compact = compact;
+            long s = 1;
+            for (int a = 0; a < fractionDigits; a++) {
+                s *= 10;
+            }
+            scale = s;
+        }
+
+        void write(VectorImage vectorImage, Dimension exportSize) throws IOException {
+            if (compact) {
+                out.write("<?xml version=\"1.0\" encoding=\"iso-8859-1\"?>\n");
+                out.write("<svg version=\"1.1\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"");
+                writeInt(exportSize.width);
+                out.write("\" height=\"");
+                writeInt(exportSize.height);
+                out.write("\" viewBox=\"0 0 ");
+                writeInt(exportSize.width);
+                out.write(' ');
+                writeInt(exportSize.height);
+                out.write("\">");
+            } else {
+                out.write("<?xml version=\"1.0\" encoding=\"iso-8859-1\"?>\n");
+                out.write("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n");
+                out.write("<svg version=\"1.1\" id=\"buildings_1\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"\n");
+                out.write("\tx=\"0px\" y=\"0px\" width=\"");
+                writeInt(exportSize.width);
+                out.write("px\" height=\"");
+                writeInt(exportSize.height);
+                out.write("px\" viewBox=\"0 0 ");
+                writeInt(exportSize.width);
+                out.write(' ');
+                writeInt(exportSize.height);
+                out.write("\"\n");
+                out.write("\t xml:space=\"preserve\">\n");
+            }
 
             AffineTransform masterTX = TransformUtils.createAffineTransform(vectorImage.getBounds(),
                     new Rectangle(0,0,exportSize.width,exportSize.height));
 
-            java.util.List<Operation> operations = new LinkedList<>();
-            for (Operation op : vectorImage.getOperations()) {
+            List<Operation> operations = vectorImage.getOperations();
+            FillOperation[] fills = new FillOperation[operations.size()];
+            Paint[] paints = new Paint[operations.size()];
+            int fillCount = 0;
+            for (Operation op : operations) {
                 if (op instanceof DrawOperation drawOperation)
                     op = drawOperation.toFillOperation();
                 if (op instanceof ShapeOperation shapeOp && ShapeUtils.isEmpty(shapeOp.getShape()))
                     continue;
-                operations.add(op);
+                if (!(op instanceof FillOperation fillOperation))
+                    throw new UnsupportedOperationException(op.getClass().getName() + " " + op);
+                Paint paint = applyAlphaComposite(fillOperation.getContext().getPaint(), fillOperation.getContext().getComposite());
+                if (compact && isInvisible(paint))
+                    continue;
+                fills[fillCount] = fillOperation;
+                paints[fillCount] = paint;
+                fillCount++;
             }
 
-            ps.println("\t<defs>");
+            // identify which paths are repeated, so we only define the paths that will be reused
+            long[] hashes = new long[fillCount];
+            int hashCount = 0;
+            for (int a = 0; a < fillCount; a++) {
+                if (loadPath(fills[a], masterTX) && isReusable(paints[a]))
+                    hashes[hashCount++] = path.hash;
+            }
+            Arrays.sort(hashes, 0, hashCount);
 
-            // I think (?) gradients have to be defined at the top of the SVG, and they can't be
-            // defined inline.
-            Map<Paint, String> paintDefinitions = new IdentityHashMap<>();
-            for (Operation op : operations) {
-                if (op instanceof FillOperation fillOperation) {
-                    Paint paint = fillOperation.getContext().getPaint();
-                    paint = applyAlphaComposite(paint, fillOperation.getContext().getComposite());
-                    if (paint instanceof GradientPaint gradientPaint) {
-                        String id = "paint-id-" + paintDefinitions.size();
-                        paintDefinitions.put(paint, id);
-
-                        Point2D p1 = gradientPaint.getPoint1();
-                        Point2D p2 = gradientPaint.getPoint1();
-
-                        fillOperation.getContext().getTransform().transform(p1, p1);
-                        masterTX.transform(p1, p1);
-                        fillOperation.getContext().getTransform().transform(p2, p2);
-                        masterTX.transform(p2, p2);
-
-                        ps.println("\t\t<linearGradient id=\"" + id  +"\" " +
-                                "x1=\"" + p1.getX() + "\" y1=\"" + p1.getY() + "\" x2=\"" + p2.getX() + "\" y2=\"" + p2.getY() + "\">");
-                        String color1str = toRGBHexString(gradientPaint.getColor1());
-                        String color2str = toRGBHexString(gradientPaint.getColor2());
-                        float alpha1 = gradientPaint.getColor1().getAlpha();
-                        float alpha2 = gradientPaint.getColor2().getAlpha();
-                        String opacity1str = alpha1 == 255f ? "1" : Float.toString( alpha1 / 255f );
-                        String opacity2str = alpha2 == 255f ? "1" : Float.toString( alpha2 / 255f );
-                        ps.println("\t\t\toffset=\"0%\" style=\"stop-color:" + color1str + ";stop-opacity:" + opacity1str +";\"/>");
-                        ps.println("\t\t\toffset=\"100%\" style=\"stop-color:" + color2str + ";stop-opacity:" + opacity2str +";\"/>");
-                        ps.println("\t\t</linearGradient>");
+            writeIndent(1);
+            out.write("<g>");
+            endLine();
+            for (int a = 0; a < fillCount; a++) {
+                FillOperation fillOperation = fills[a];
+                Paint paint = paints[a];
+                if (!loadPath(fillOperation, masterTX))
+                    continue;
+
+                String paintID = null;
+                if (paint instanceof GradientPaint gradientPaint) {
+                    paintID = defineGradient(gradientPaint);
+                } else if (!(paint instanceof Color)) {
+                    throw new UnsupportedOperationException(paint.toString());
+                }
+
+                int windingRule = path.windingRule;
+                if (isReusable(paint) && isRepeated(hashes, hashCount, path.hash)) {
+                    closePath();
+                    String pathID = pathIDs.get(path);
+                    if (pathID == null) {
+                        pathID = (compact ? "p" : "path-id-") + pathIDs.size();
+                        pathIDs.put(path.copy(), pathID);
+                        writeIndent(2);
+                        out.write("<defs><path id=\"");
+                        out.write(pathID);
+                        out.write("\" d=\"");
+                        writePathData(path.dx, path.dy);
+                        out.write("\"/></defs>");
+                        endLine();
                     }
+                    writeIndent(2);
+                    out.write("<use xlink:href=\"#");
+                    out.write(pathID);
+                    out.write("\" x=\"");
+                    writeCoordinate(path.dx);
+                    out.write("\" y=\"");
+                    writeCoordinate(path.dy);
+                    out.write("\" ");
+                    writeStyle(windingRule, paint, paintID);
+                    out.write("/>");
+                    endLine();
+                } else if (compact && canMerge(windingRule, paint, paintID)) {
+                    openMinX = Math.min(openMinX, path.minX);
+                    openMinY = Math.min(openMinY, path.minY);
+                    openMaxX = Math.max(openMaxX, path.maxX);
+                    openMaxY = Math.max(openMaxY, path.maxY);
+                    writeCompactPathData(0, 0);
+                } else if (compact) {
+                    closePath();
+                    out.write("<path ");
+                    writeStyle(windingRule, paint, paintID);
+                    out.write(" d=\"");
+                    resetCompactPathData();
+                    writeCompactPathData(0, 0);
+
+                    // leave this element open in case we can merge the next operation into it
+                    pathOpen = true;
+                    openPaint = paint;
+                    openPaintID = paintID;
+                    openWindingRule = windingRule;
+                    openMinX = path.minX;
+                    openMinY = path.minY;
+                    openMaxX = path.maxX;
+                    openMaxY = path.maxY;
+                } else {
+                    out.write("\t\t<path ");
+                    writeStyle(windingRule, paint, paintID);
+                    out.write(" d=\"");
+                    writePathData(0, 0);
+                    out.write("\"/>\n");
                 }
             }
+            closePath();
 
-            ps.println("\t</defs>");
-            ps.println("\t<g>");
+            writeIndent(1);
+            out.write("</g>");
+            endLine();
+            out.write("</svg>\n");
+        }
 
-            for (Operation op : operations) {
-                if (op instanceof FillOperation fillOperation) {
-                    Shape shape = fillOperation.getShape();
-                    shape = fillOperation.getContext().getTransform().createTransformedShape(shape);
-                    shape = masterTX.createTransformedShape(shape);
-
-                    Paint paint = fillOperation.getContext().getPaint();
-                    paint = applyAlphaComposite(paint, fillOperation.getContext().getComposite());
-
-                    String pathStr = ShapeStringUtils.toString(shape).toUpperCase();
-                    String fillruleStr = shape.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD ? "evenodd" : "nonzero";
-                    String fillStr;
-                    String paintID = paintDefinitions.get(paint);
-                    String fillOpacityStr = "1";
-                    if (paintID != null) {
-                        fillStr = "url(#" + paintID + ")";
-                    } else if (paint instanceof Color color) {
-                        fillStr = toRGBHexString(color);
-                        if (color.getAlpha() < 255)
-                            fillOpacityStr = Float.toString( ((float)(color.getAlpha())) / 255f );
+        private void writeIndent(int depth) throws IOException {
+            if (compact)
+                return;
+            for (int a = 0; a < depth; a++) {
+                out.write('\t');
+            }
+        }
+
+        private void endLine() throws IOException {
+            if (!compact)
+                out.write('\n');
+        }
+
+        /**
+         * Return true if an operation can be added to the open {@code <path>} element.
+         * <p>
+         * This requires the same style, and it requires the new shape not to overlap the shapes already
+         * in that element: overlapping subpaths could change the winding number (punching holes in
+         * the fill) or change how translucent colors composite.
+         */
+        private boolean canMerge(int windingRule, Paint paint, String paintID) {
+            if (!pathOpen || windingRule != openWindingRule || !Objects.equals(paintID, openPaintID))
+                return false;
+            if (paintID == null && !paint.equals(openPaint))
+                return false;
+            return path.minX >= openMaxX || path.maxX <= openMinX || path.minY >= openMaxY || path.maxY <= openMinY;
+        }
+
+        private void closePath() throws IOException {
+            if (!pathOpen)
+                return;
+            out.write("\"/>");
+            pathOpen = false;
+            openPaint = null;
+            openPaintID = null;
+        }
+
+        private boolean isInvisible(Paint paint) {
+            if (paint instanceof Color color)
+                return color.getAlpha() == 0;
+            if (paint instanceof GradientPaint gradientPaint)
+                return gradientPaint.getColor1().getAlpha() == 0 && gradientPaint.getColor2().getAlpha() == 0;
+            return false;
+        }
+
+        /**
+         * Gradients are defined in absolute coordinates, so a path filled with a gradient can't be
+         * reused at a different position.
+         */
+        private boolean isReusable(Paint paint) {
+            return paint instanceof Color && path.coordCount >= MIN_REUSED_COORDINATES;
+        }
+
+        private boolean isRepeated(long[] sortedHashes, int length, long hash) {
+            int i = Arrays.binarySearch(sortedHashes, 0, length, hash);
+            if (i < 0)
+                return false;
+            return (i > 0 && sortedHashes[i - 1] == hash) || (i + 1 < length && sortedHashes[i + 1] == hash);
+        }
+
+        /**
+         * Load the quantized export coordinates of an operation's shape into {@link #path}.
+         *
+         * @return false if the shape has no segments.
+         */
+        private boolean loadPath(FillOperation fillOperation, AffineTransform masterTX) {
+            tx.setTransform(masterTX);
+            tx.concatenate(fillOperation.getContext().getTransform());
+
+            path.reset();
+            PathIterator iter = fillOperation.getShape().getPathIterator(tx);
+            path.windingRule = iter.getWindingRule();
+            while (!iter.isDone()) {
+                int type = iter.currentSegment(segment);
+                path.addType(type);
+                int pointCount = switch (type) {
+                    case PathIterator.SEG_MOVETO, PathIterator.SEG_LINETO -> 1;
+                    case PathIterator.SEG_QUADTO -> 2;
+                    case PathIterator.SEG_CUBICTO -> 3;
+                    default -> 0;
+                };
+                for (int k = 0; k < 2 * pointCount; k++) {
+                    path.addCoordinate(Math.round(segment[k] * scale));
+                }
+                iter.next();
+            }
+            path.complete();
+            return path.typeCount > 0;
+        }
+
+        /**
+         * Write the path data of a new element.
+         */
+        private void writePathData(long dx, long dy) throws IOException {
+            if (compact) {
+                resetCompactPathData();
+                writeCompactPathData(dx, dy);
+                return;
+            }
+
+            int c = 0;
+            for (int a = 0; a < path.typeCount; a++) {
+                int pointCount;
+                switch (path.types[a]) {
+                    case PathIterator.SEG_MOVETO -> { out.write('M'); pointCount = 1; }
+                    case PathIterator.SEG_LINETO -> { out.write('L'); pointCount = 1; }
+                    case PathIterator.SEG_QUADTO -> { out.write('Q'); pointCount = 2; }
+                    case PathIterator.SEG_CUBICTO -> { out.write('C'); pointCount = 3; }
+                    default -> { out.write('Z'); pointCount = 0; }
+                }
+                for (int k = 0; k < pointCount; k++) {
+                    if (k > 0)
+                        out.write(' ');
+                    writeCoordinate(path.coords[c++] - dx);
+                    out.write(' ');
+                    writeCoordinate(path.coords[c++] - dy);
+                }
+            }
+        }
+
+        private void resetCompactPathData() {
+            currentX = 0;
+            currentY = 0;
+            subpathX = 0;
+            subpathY = 0;
+            lastCommand = 0;
+        }
+
+        /**
+         * Write path data using relative commands, omitting repeated command letters and any
+         * unnecessary separators. This continues from the current point, so it can append
+         * subpaths to path data that was already written.
+         */
+        private void writeCompactPathData(long dx, long dy) throws IOException {
+            long[] coords = path.coords;
+            int c = 0;
+            for (int a = 0; a < path.typeCount; a++) {
+                int type = path.types[a];
+                if (type == PathIterator.SEG_CLOSE) {
+                    if (lastCommand != 'z')
+                        out.write('z');
+                    lastCommand = 'z';
+                    currentX = subpathX;
+                    currentY = subpathY;
+                    continue;
+                }
+
+                int pointCount = type == PathIterator.SEG_CUBICTO ? 3 : type == PathIterator.SEG_QUADTO ? 2 : 1;
+                long endX = coords[c + 2 * pointCount - 2] - dx;
+                long endY = coords[c + 2 * pointCount - 1] - dy;
+                if (type == PathIterator.SEG_MOVETO) {
+                    boolean first = writeCommand('m');
+                    writePathNumber(endX - currentX, first);
+                    writePathNumber(endY - currentY, false);
+                    // SVG treats additional coordinates after a moveto as implicit lineto commands
+                    lastCommand = 'l';
+                    subpathX = endX;
+                    subpathY = endY;
+                } else if (type == PathIterator.SEG_LINETO) {
+                    boolean closesNext = a + 1 < path.typeCount && path.types[a + 1] == PathIterator.SEG_CLOSE;
+                    if (endX == currentX && endY == currentY) {
+                        // a zero-length line doesn't change the fill
+                    } else if (closesNext && endX == subpathX && endY == subpathY) {
+                        // the "z" command will draw this line
+                    } else if (endY == currentY) {
+                        writePathNumber(endX - currentX, writeCommand('h'));
+                    } else if (endX == currentX) {
+                        writePathNumber(endY - currentY, writeCommand('v'));
                     } else {
-                        throw new UnsupportedOperationException(paint.toString());
+                        boolean first = writeCommand('l');
+                        writePathNumber(endX - currentX, first);
+                        writePathNumber(endY - currentY, false);
                     }
-                    ps.println("\t\t<path style=\"fill-rule:" + fillruleStr + ";fill:" + fillStr + ";fill-opacity:" + fillOpacityStr + ";\" d=\"" + pathStr + "\"/>");
                 } else {
-                    throw new UnsupportedOperationException(op.getClass().getName() + " " + op);
+                    boolean first = writeCommand(type == PathIterator.SEG_CUBICTO ? 'c' : 'q');
+                    for (int k = 0; k < pointCount; k++) {
+                        writePathNumber(coords[c + 2 * k] - dx - currentX, first && k == 0);
+                        writePathNumber(coords[c + 2 * k + 1] - dy - currentY, false);
+                    }
                 }
+                c += 2 * pointCount;
+                currentX = endX;
+                currentY = endY;
             }
+        }
 
-            ps.println("\t</g>");
-            ps.println("</svg>");
+        /**
+         * Write a command letter unless it is the same as the previous command.
+         *
+         * @return true if the letter was written.
+         */
+        private boolean writeCommand(char command) throws IOException {
+            if (lastCommand == command)
+                return false;
+            out.write(command);
+            lastCommand = command;
+            return true;
+        }
+
+        /**
+         * Write a number in compact path data. A separator is only needed if the number
+         * couldn't otherwise be distinguished from the previous number.
+         *
+         * @param followsCommand true if this number immediately follows a command letter.
+         */
+        private void writePathNumber(long quantizedValue, boolean followsCommand) throws IOException {
+            if (!followsCommand && quantizedValue >= 0) {
+                boolean startsWithDot = quantizedValue != 0 && quantizedValue < scale;
+                if (!(startsWithDot && lastNumberHadDot))
+                    out.write(' ');
+            }
+            lastNumberHadDot = writeFixedPoint(quantizedValue, scale);
+        }
+
+        private void writeStyle(int windingRule, Paint paint, String paintID) throws IOException {
+            int alpha = paintID == null ? ((Color) paint).getAlpha() : 255;
+            if (compact) {
+                out.write("fill=\"");
+                writePaint(paint, paintID);
+                out.write('"');
+                if (alpha != 255) {
+                    out.write(" fill-opacity=\"");
+                    writeOpacity(alpha);
+                    out.write('"');
+                }
+                if (windingRule == PathIterator.WIND_EVEN_ODD)
+                    out.write(" fill-rule=\"evenodd\"");
+                return;
+            }
+
+            out.write("style=\"fill-rule:");
+            out.write(windingRule == PathIterator.WIND_EVEN_ODD ? "evenodd" : "nonzero");
+            out.write(";fill:");
+            writePaint(paint, paintID);
+            out.write(";fill-opacity:");
+            writeOpacity(alpha);
+            out.write(";\"");
+        }
+
+        private void writePaint(Paint paint, String paintID) throws IOException {
+            if (paintID != null) {
+                out.write("url(#");
+                out.write(paintID);
+                out.write(')');
+            } else {
+                writeRGBHexString((Color) paint);
+            }
+        }
+
+        /**
+         * Return the ID of a gradient, defining it first if this is the first time it is used.
+         */
+        private String defineGradient(GradientPaint gradientPaint) throws IOException {
+            Point2D p1 = tx.transform(gradientPaint.getPoint1(), null);
+            Point2D p2 = tx.transform(gradientPaint.getPoint2(), null);
+            GradientKey key = new GradientKey(Math.round(p1.getX() * scale), Math.round(p1.getY() * scale),
+                    Math.round(p2.getX() * scale), Math.round(p2.getY() * scale),
+                    gradientPaint.getColor1().getRGB(), gradientPaint.getColor2().getRGB(), gradientPaint.isCyclic());
+            String id = gradientIDs.get(key);
+            if (id != null)
+                return id;
+
+            id = (compact ? "g" : "paint-id-") + gradientIDs.size();
+            gradientIDs.put(key, id);
+
+            closePath();
+            writeIndent(2);
+            out.write("<defs>");
+            endLine();
+            writeIndent(3);
+            out.write("<linearGradient id=\"");
+            out.write(id);
+            out.write("\" gradientUnits=\"userSpaceOnUse\" x1=\"");
+            writeCoordinate(key.x1());
+            out.write("\" y1=\"");
+            writeCoordinate(key.y1());
+            out.write("\" x2=\"");
+            writeCoordinate(key.x2());
+            out.write("\" y2=\"");
+            writeCoordinate(key.y2());
+            out.write(key.cyclic() ? "\" spreadMethod=\"reflect\">" : "\">");
+            endLine();
+            writeStop(compact ? "0" : "0%", gradientPaint.getColor1());
+            writeStop(compact ? "1" : "100%", gradientPaint.getColor2());
+            writeIndent(3);
+            out.write("</linearGradient>");
+            endLine();
+            writeIndent(2);
+            out.write("</defs>");
+            endLine();
+            return id;
+        }
+
+        private void writeStop(String offset, Color color) throws IOException {
+            writeIndent(4);
+            out.write("<stop offset=\"");
+            out.write(offset);
+            out.write("\" style=\"stop-color:");
+            writeRGBHexString(color);
+            out.write(";stop-opacity:");
+            writeOpacity(color.getAlpha());
+            out.write(";\"/>");
+            endLine();
+        }
+
+        private void writeOpacity(int alpha) throws IOException {
+            writeFixedPoint(Math.round(alpha * 1000 / 255.0), 1000);
+        }
+
+        /**
+         * Write a coordinate that was quantized by {@link #scale}.
+         */
+        private void writeCoordinate(long quantizedValue) throws IOException {
+            writeFixedPoint(quantizedValue, scale);
+        }
+
+        private void writeInt(long value) throws IOException {
+            writeFixedPoint(value, 1);
+        }
+
+        /**
+         * Write {@code value / scale} without trailing zeros. In compact mode this also omits
+         * the leading zero of numbers between -1 and 1. This doesn't allocate any objects.
+         *
+         * @return true if a decimal point was written.
+         */
+        private boolean writeFixedPoint(long value, long scale) throws IOException {
+            if (value == 0) {
+                out.write('0');
+                return false;
+            }
+            if (value < 0) {
+                out.write('-');
+                value = -value;
+            }
+
+            int i = numberChars.length;
+            long intPart = value / scale;
+            long fracPart = value % scale;
+            boolean hasDot = fracPart != 0;
+            if (hasDot) {
+                boolean significant = false;
+                for (long s = scale; s > 1; s /= 10) {
+                    int digit = (int) (fracPart % 10);
+                    fracPart /= 10;
+                    if (digit != 0 || significant) {
+                        numberChars[--i] = (char) ('0' + digit);
+                        significant = true;
+                    }
+                }
+                numberChars[--i] = '.';
+            }
+            if (intPart != 0 || !hasDot || !compact) {
+                do {
+                    numberChars[--i] = (char) ('0' + intPart % 10);
+                    intPart /= 10;
+                } while (intPart > 0);
+            }
+            out.write(numberChars, i, numberChars.length - i);
+            return hasDot;
+        }
+
+        /**
+         * Write an RGB hex code like "#fe10da" or "#001fc8". In compact mode this uses the
+         * three-digit form (like "#f0a") when possible.
+         */
+        private void writeRGBHexString(Color color) throws IOException {
+            int rgb = color.getRGB() & 0xffffff;
+            out.write('#');
+            if (compact && (rgb & 0x0f0f0f) * 0x10 == (rgb & 0xf0f0f0)) {
+                for (int shift = 20; shift >= 0; shift -= 8) {
+                    out.write(Character.forDigit((rgb >> shift) & 0xf, 16));
+                }
+                return;
+            }
+            for (int shift = 20; shift >= 0; shift -= 4) {
+                out.write(Character.forDigit((rgb >> shift) & 0xf, 16));
+            }
         }
     }
 
-    private Paint applyAlphaComposite(Paint paint, Composite composite) {
+    private static Paint applyAlphaComposite(Paint paint, Composite composite) {
         if (composite instanceof AlphaComposite alphaComposite) {
             if (alphaComposite.getRule() == AlphaComposite.SRC_OVER) {
                 if (alphaComposite.getAlpha() == 1)
@@ -138,15 +807,4 @@ public class SVGWriter {
             throw new RuntimeException("Unsupported composite: " + composite);
         }
     }
-
-    /**
-     * @return an RGB hex code like "#fe10da" or "#001fc8"
-     */
-    private String toRGBHexString(Color color) {
-        String str = Integer.toUnsignedString(color.getRGB(), 16);
-        while (str.length() < 8)
-            str = "0" + str;
-        // put alpha at end
-        return "#" + str.substring(2, 8);
-    }
 }